@@ -18,34 +18,185 @@
 
 package org.entur.gbfs;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import org.entur.gbfs.http.BackoffPolicy;
+import org.entur.gbfs.http.CircuitBreaker;
+import org.entur.gbfs.http.GBFSHttpClient;
+import org.entur.gbfs.http.LoadLeveller;
+import org.entur.gbfs.http.TtlPolicy;
+import org.entur.gbfs.http.UpdateClock;
+import org.entur.gbfs.http.UpdateStrategy;
 import org.entur.gbfs.loader.GbfsSubscription;
+import org.entur.gbfs.loader.UpdateOutcome;
 import org.entur.gbfs.loader.v2.GbfsV2Delivery;
 import org.entur.gbfs.loader.v2.GbfsV2Subscription;
 import org.entur.gbfs.loader.v3.GbfsV3Delivery;
 import org.entur.gbfs.loader.v3.GbfsV3Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Manage a set of subscriptions for different GBFS feeds.
  * A subscription consumes atomic updates of a set of GBFS files belonging to
  * a single system.
  * The subscription manager has subscription methods for v2 and v3 GBFS feeds.
+ * All subscriptions share the same http client and its connection pool.
+ * Subscriptions are either updated by calling {@link #update()} periodically, or
+ * automatically when they are due after calling {@link #start()}.
+ * If the discovery file of a subscription can't be fetched, the subscription is
+ * pending, and the discovery file is fetched again in the background with exponential
+ * backoff until the subscription can be activated.
  */
-public class GbfsSubscriptionManager {
+public class GbfsSubscriptionManager implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(
+    GbfsSubscriptionManager.class
+  );
+
+  /**
+   * Minimum time between scheduled updates of a subscription, e.g. if a file is still
+   * due after an update because it could not be fetched
+   */
+  private static final long MIN_SCHEDULING_DELAY_MILLIS = 1000;
 
   private final Map<String, GbfsSubscription> subscriptions = new ConcurrentHashMap<>();
 
-  private ForkJoinPool customThreadPool;
+  /**
+   * Subscriptions waiting for their discovery file to be fetched
+   */
+  private final Map<String, GbfsSubscription> pendingSubscriptions =
+    new ConcurrentHashMap<>();
+
+  /**
+   * Scheduled updates by subscription identifier, while the manager is started
+   */
+  private final Map<String, ScheduledFuture<?>> scheduledUpdates =
+    new ConcurrentHashMap<>();
+
+  private volatile ScheduledThreadPoolExecutor scheduler;
+
+  private final Executor executor;
+
+  /**
+   * True if the executor was created by the manager for virtual threads. The files of
+   * each subscription are then fetched concurrently on the same executor.
+   */
+  private final boolean ownsExecutor;
+
+  /**
+   * Executor for the blocking fetches of discovery files when subscribing. Created when
+   * first needed, unless the manager has virtual threads.
+   */
+  private ExecutorService discoveryExecutor;
+
+  private final GBFSHttpClient httpClient;
 
-  public GbfsSubscriptionManager() {}
+  private final boolean ownsHttpClient;
+
+  private final LoadLeveller loadLeveller;
+
+  public GbfsSubscriptionManager() {
+    this(null, null);
+  }
 
   public GbfsSubscriptionManager(ForkJoinPool customThreadPool) {
-    this.customThreadPool = customThreadPool;
+    this(customThreadPool, null);
+  }
+
+  /**
+   * @param customThreadPool Thread pool used to run subscription updates, or null to
+   *                         use the common pool
+   * @param httpClient Http client shared by all subscriptions, or null to let the
+   *                   manager create (and close) its own
+   */
+  public GbfsSubscriptionManager(
+    ForkJoinPool customThreadPool,
+    GBFSHttpClient httpClient
+  ) {
+    this((Executor) customThreadPool, httpClient);
+  }
+
+  /**
+   * @param executor Executor used to run subscription updates, or null to use the
+   *                 common pool
+   * @param httpClient Http client shared by all subscriptions, or null to let the
+   *                   manager create (and close) its own
+   */
+  public GbfsSubscriptionManager(Executor executor, GBFSHttpClient httpClient) {
+    this(executor, false, httpClient, null);
+  }
+
+  /**
+   * @param executor Executor used to run subscription updates, or null to use the
+   *                 common pool
+   * @param httpClient Http client shared by all subscriptions, or null to let the
+   *                   manager create (and close) its own
+   * @param loadLeveller Spreads the updates of all subscriptions over time
+   */
+  public GbfsSubscriptionManager(
+    Executor executor,
+    GBFSHttpClient httpClient,
+    LoadLeveller loadLeveller
+  ) {
+    this(executor, false, httpClient, loadLeveller);
+  }
+
+  private GbfsSubscriptionManager(
+    Executor executor,
+    boolean ownsExecutor,
+    GBFSHttpClient httpClient,
+    LoadLeveller loadLeveller
+  ) {
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+    this.loadLeveller = loadLeveller;
+    this.ownsHttpClient = httpClient == null;
+    this.httpClient = ownsHttpClient ? new GBFSHttpClient() : httpClient;
+  }
+
+  /**
+   * Create a manager which runs each subscription update, and each fetch of a file, on
+   * its own virtual thread. Since fetching files is mostly waiting for responses, this
+   * avoids sizing a thread pool for the number of subscriptions. Virtual threads
+   * require Java 21, on older versions the common pool is used.
+   *
+   * @param httpClient Http client shared by all subscriptions, or null to let the
+   *                   manager create (and close) its own
+   */
+  public static GbfsSubscriptionManager withVirtualThreads(GBFSHttpClient httpClient) {
+    Optional<ExecutorService> virtualThreadExecutor =
+      VirtualThreads.newVirtualThreadPerTaskExecutor();
+    if (virtualThreadExecutor.isEmpty()) {
+      LOG.info("Virtual threads are not supported, using the common pool");
+      return new GbfsSubscriptionManager(null, false, httpClient, null);
+    }
+    return new GbfsSubscriptionManager(
+      virtualThreadExecutor.get(),
+      true,
+      httpClient,
+      null
+    );
   }
 
   /**
@@ -57,13 +208,16 @@ public class GbfsSubscriptionManager {
    *
    * @param options Options
    * @param consumer A consumer that will handle receiving updates from the loader
-   * @return A string identifier
+   * @return A string identifier, also if the subscription is still pending
    */
   public String subscribeV2(
     GbfsSubscriptionOptions options,
     Consumer<GbfsV2Delivery> consumer
   ) {
-    return subscribe(new GbfsV2Subscription(options, consumer));
+    return subscribe(
+      options,
+      new GbfsV2Subscription(withManagerDefaults(options), consumer, null, httpClient)
+    );
   }
 
   /**
@@ -76,14 +230,50 @@ public class GbfsSubscriptionManager {
    * @param options Options
    * @param consumer A consumer that will handle receiving updates from the loader
    * @param updateInterceptor A subscription update interceptor
-   * @return A string identifier
+   * @return A string identifier, also if the subscription is still pending
    */
   public String subscribeV2(
     GbfsSubscriptionOptions options,
     Consumer<GbfsV2Delivery> consumer,
     SubscriptionUpdateInterceptor updateInterceptor
   ) {
-    return subscribe(new GbfsV2Subscription(options, consumer, updateInterceptor));
+    return subscribe(
+      options,
+      new GbfsV2Subscription(
+        withManagerDefaults(options),
+        consumer,
+        updateInterceptor,
+        httpClient
+      )
+    );
+  }
+
+  /**
+   * Start subscriptions on a set of GBFS v2.x feeds. The discovery files are fetched
+   * concurrently, each on its own thread, as fetching them blocks. The threads are
+   * virtual if the manager has virtual threads. Subscribing takes as long as fetching
+   * the slowest discovery file, and doesn't occupy the executor of the updates.
+   *
+   * @param options Options for each subscription
+   * @param consumers Gives the consumer for the subscription with the given options
+   * @return Completes with the identifier of each subscription, in the same order as
+   *         the options
+   */
+  public List<CompletableFuture<String>> subscribeAllV2(
+    Collection<GbfsSubscriptionOptions> options,
+    Function<GbfsSubscriptionOptions, Consumer<GbfsV2Delivery>> consumers
+  ) {
+    Executor discoveryExecutor = getDiscoveryExecutor();
+    return options
+      .stream()
+      .map(subscriptionOptions -> {
+        Consumer<GbfsV2Delivery> consumer = consumers.apply(subscriptionOptions);
+        return CompletableFuture.supplyAsync(
+          () -> subscribeV2(subscriptionOptions, consumer),
+          discoveryExecutor
+        );
+      })
+      .toList();
   }
 
   /**
@@ -91,13 +281,16 @@ public class GbfsSubscriptionManager {
    *
    * @param options Options
    * @param consumer A consumer that will handle receiving updates from the loader}
-   * @return A string identifier
+   * @return A string identifier, also if the subscription is still pending
    */
   public String subscribeV3(
     GbfsSubscriptionOptions options,
     Consumer<GbfsV3Delivery> consumer
   ) {
-    return subscribe(new GbfsV3Subscription(options, consumer));
+    return subscribe(
+      options,
+      new GbfsV3Subscription(withManagerDefaults(options), consumer, null, httpClient)
+    );
   }
 
   /**
@@ -106,30 +299,85 @@ public class GbfsSubscriptionManager {
    * @param options Options
    * @param consumer A consumer that will handle receiving updates from the loader}
    * @param updateInterceptor A subscription update interceptor
-   * @return A string identifier
+   * @return A string identifier, also if the subscription is still pending
    */
   public String subscribeV3(
     GbfsSubscriptionOptions options,
     Consumer<GbfsV3Delivery> consumer,
     SubscriptionUpdateInterceptor updateInterceptor
   ) {
-    return subscribe(new GbfsV3Subscription(options, consumer, updateInterceptor));
+    return subscribe(
+      options,
+      new GbfsV3Subscription(
+        withManagerDefaults(options),
+        consumer,
+        updateInterceptor,
+        httpClient
+      )
+    );
+  }
+
+  /**
+   * Start subscriptions on a set of GBFS v3.x feeds. The discovery files are fetched
+   * concurrently, each on its own thread, as fetching them blocks. The threads are
+   * virtual if the manager has virtual threads. Subscribing takes as long as fetching
+   * the slowest discovery file, and doesn't occupy the executor of the updates.
+   *
+   * @param options Options for each subscription
+   * @param consumers Gives the consumer for the subscription with the given options
+   * @return Completes with the identifier of each subscription, in the same order as
+   *         the options
+   */
+  public List<CompletableFuture<String>> subscribeAllV3(
+    Collection<GbfsSubscriptionOptions> options,
+    Function<GbfsSubscriptionOptions, Consumer<GbfsV3Delivery>> consumers
+  ) {
+    Executor discoveryExecutor = getDiscoveryExecutor();
+    return options
+      .stream()
+      .map(subscriptionOptions -> {
+        Consumer<GbfsV3Delivery> consumer = consumers.apply(subscriptionOptions);
+        return CompletableFuture.supplyAsync(
+          () -> subscribeV3(subscriptionOptions, consumer),
+          discoveryExecutor
+        );
+      })
+      .toList();
   }
 
   /**
    * Update all subscriptions
+   *
+   * @return Completes when all subscriptions are updated, with the outcome of each
+   *         update by subscription identifier
    */
-  public void update() {
-    subscriptions.values().parallelStream().forEach(subscription -> update(subscription));
+  public CompletableFuture<Map<String, UpdateOutcome>> update() {
+    Map<String, CompletableFuture<UpdateOutcome>> updates = new LinkedHashMap<>();
+    subscriptions.forEach((id, subscription) -> updates.put(id, update(subscription)));
+
+    return CompletableFuture
+      .allOf(updates.values().toArray(new CompletableFuture<?>[0]))
+      .thenApply(ignored -> {
+        Map<String, UpdateOutcome> outcomes = new LinkedHashMap<>();
+        updates.forEach((id, update) -> outcomes.put(id, update.join()));
+        return outcomes;
+      });
   }
 
   /**
    * Update single subscription
    *
    * @param identifier Identifier of subscription
+   * @return Completes with the outcome when the subscription is updated
    */
-  public void update(String identifier) {
-    update(subscriptions.get(identifier));
+  public CompletableFuture<UpdateOutcome> update(String identifier) {
+    GbfsSubscription subscription = subscriptions.get(identifier);
+    if (subscription == null) {
+      return CompletableFuture.failedFuture(
+        new IllegalArgumentException("Unknown subscription " + identifier)
+      );
+    }
+    return update(subscription);
   }
 
   /**
@@ -137,11 +385,160 @@ public class GbfsSubscriptionManager {
    *
    * @param subscription Subscription which should be updated
    */
-  private void update(GbfsSubscription subscription) {
-    Optional
-      .ofNullable(customThreadPool)
-      .orElse(ForkJoinPool.commonPool())
-      .execute(subscription::update);
+  private CompletableFuture<UpdateOutcome> update(GbfsSubscription subscription) {
+    // exceptions are logged by the subscription
+    return CompletableFuture
+      .supplyAsync(subscription::updateWithOutcomeAsync, getExecutor())
+      .thenCompose(Function.identity())
+      .exceptionally(e -> UpdateOutcome.FAILED);
+  }
+
+  private Executor getExecutor() {
+    return Optional.ofNullable(executor).orElse(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Get the executor for fetching discovery files, which are mostly waiting for
+   * responses. Unlike the pool of the updates, it has a thread for each fetch.
+   */
+  private synchronized Executor getDiscoveryExecutor() {
+    if (ownsExecutor) {
+      return executor;
+    }
+    if (discoveryExecutor == null) {
+      discoveryExecutor =
+        Executors.newCachedThreadPool(runnable -> {
+          Thread thread = new Thread(runnable, "gbfs-discovery");
+          thread.setDaemon(true);
+          return thread;
+        });
+    }
+    return discoveryExecutor;
+  }
+
+  /**
+   * Fetch the files of subscriptions on the virtual thread executor, and spread their
+   * updates with the manager's load leveller, unless the subscription has its own
+   */
+  private GbfsSubscriptionOptions withManagerDefaults(GbfsSubscriptionOptions options) {
+    GbfsSubscriptionOptions result = options;
+    if (ownsExecutor && result.feedFetchExecutor() == null) {
+      result = result.withFeedFetchExecutor(executor);
+    }
+    if (loadLeveller != null && result.loadLeveller() == null) {
+      result = result.withLoadLeveller(loadLeveller);
+    }
+    return result;
+  }
+
+  /**
+   * Start updating subscriptions automatically. Each subscription is updated on the
+   * thread pool when the first of its files is due, so there is no need to call
+   * {@link #update()}. Subscriptions added after the manager is started are updated
+   * automatically as well.
+   */
+  public synchronized void start() {
+    if (scheduler != null) {
+      return;
+    }
+    // the scheduler thread only keeps the queue of due subscriptions, updates are
+    // run on the thread pool
+    ScheduledThreadPoolExecutor startedScheduler = new ScheduledThreadPoolExecutor(
+      1,
+      runnable -> {
+        Thread thread = new Thread(runnable, "gbfs-subscription-scheduler");
+        thread.setDaemon(true);
+        return thread;
+      }
+    );
+    // updates of removed subscriptions are not left in the queue
+    startedScheduler.setRemoveOnCancelPolicy(true);
+    scheduler = startedScheduler;
+    subscriptions.forEach((id, subscription) ->
+      scheduleUpdate(id, subscription, startedScheduler, 0)
+    );
+  }
+
+  /**
+   * Stop updating subscriptions automatically. Updates which are already running are
+   * completed.
+   */
+  public synchronized void stop() {
+    if (scheduler == null) {
+      return;
+    }
+    scheduler.shutdownNow();
+    scheduler = null;
+    scheduledUpdates.values().forEach(future -> future.cancel(false));
+    scheduledUpdates.clear();
+  }
+
+  /**
+   * Check if subscriptions are updated automatically
+   */
+  public boolean isStarted() {
+    return scheduler != null;
+  }
+
+  /**
+   * Schedule an update on the scheduler the chain of updates of the subscription was
+   * started on. If the manager has been restarted since, the chain is dropped, as the
+   * new scheduler has started its own. Synchronized with {@link #start()} and
+   * {@link #stop()}, so a chain of an old scheduler can't replace one of the new.
+   */
+  private synchronized void scheduleUpdate(
+    String id,
+    GbfsSubscription subscription,
+    ScheduledExecutorService chainScheduler,
+    long delay
+  ) {
+    if (
+      chainScheduler == null ||
+      chainScheduler != scheduler ||
+      subscriptions.get(id) != subscription
+    ) {
+      return;
+    }
+    try {
+      scheduledUpdates.put(
+        id,
+        chainScheduler.schedule(
+          () -> runScheduledUpdate(id, subscription, chainScheduler),
+          delay,
+          TimeUnit.MILLISECONDS
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      // the manager was stopped
+      return;
+    }
+    // the subscription may have been removed while it was scheduled
+    if (subscriptions.get(id) != subscription) {
+      cancelScheduledUpdate(id);
+    }
+  }
+
+  private void runScheduledUpdate(
+    String id,
+    GbfsSubscription subscription,
+    ScheduledExecutorService chainScheduler
+  ) {
+    update(subscription)
+      .thenRun(() ->
+        scheduleUpdate(
+          id,
+          subscription,
+          chainScheduler,
+          Math.max(MIN_SCHEDULING_DELAY_MILLIS, subscription.getMillisUntilNextUpdate())
+        )
+      );
+  }
+
+  private void cancelScheduledUpdate(String id) {
+    ScheduledFuture<?> scheduledUpdate = scheduledUpdates.remove(id);
+    if (scheduledUpdate != null) {
+      scheduledUpdate.cancel(false);
+    }
   }
 
   /**
@@ -149,21 +546,153 @@ public class GbfsSubscriptionManager {
    *
    * @param identifier An identifier returned by subscribe method.
    */
-  public void unsubscribe(String identifier) {
+  public synchronized void unsubscribe(String identifier) {
+    pendingSubscriptions.remove(identifier);
     subscriptions.remove(identifier);
+    cancelScheduledUpdate(identifier);
   }
 
-  private String subscribe(GbfsSubscription subscription) {
+  /**
+   * Get the load leveller shared by the subscriptions, e.g. to read the request rate
+   */
+  public Optional<LoadLeveller> getLoadLeveller() {
+    return Optional.ofNullable(loadLeveller);
+  }
+
+  /**
+   * Get the state of the circuits of the hosts of a subscription's feeds, or empty if
+   * there is no such subscription
+   *
+   * @param identifier An identifier returned by subscribe method.
+   */
+  public Optional<CircuitBreaker.State> getCircuitState(String identifier) {
+    GbfsSubscription subscription = subscriptions.get(identifier);
+    if (subscription == null) {
+      subscription = pendingSubscriptions.get(identifier);
+    }
+    return Optional.ofNullable(subscription).map(GbfsSubscription::getCircuitState);
+  }
+
+  /**
+   * Get the number of updates waiting for their turn on the scheduler, which is one for
+   * each subscription which is not being updated, while the manager is started
+   */
+  int getScheduledUpdateCount() {
+    ScheduledThreadPoolExecutor currentScheduler = scheduler;
+    return currentScheduler == null ? 0 : currentScheduler.getQueue().size();
+  }
+
+  /**
+   * Check if a subscription is waiting for its discovery file to be fetched
+   *
+   * @param identifier An identifier returned by subscribe method.
+   */
+  public boolean isPending(String identifier) {
+    return pendingSubscriptions.containsKey(identifier);
+  }
+
+  /**
+   * Stop automatic updates, and close the http client and executor if they were
+   * created by this manager. Subscriptions can not be updated after the manager is
+   * closed.
+   */
+  @Override
+  public void close() {
+    stop();
+    pendingSubscriptions.clear();
+    if (ownsExecutor) {
+      ((ExecutorService) executor).shutdown();
+    }
+    synchronized (this) {
+      if (discoveryExecutor != null) {
+        discoveryExecutor.shutdown();
+      }
+    }
+    if (ownsHttpClient) {
+      try {
+        httpClient.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private String subscribe(
+    GbfsSubscriptionOptions options,
+    GbfsSubscription subscription
+  ) {
     String id = UUID.randomUUID().toString();
 
     subscription.init();
 
-    // Only add subscription if setup is complete
+    // Only activate subscription if setup is complete
     if (subscription.getSetupComplete()) {
-      subscriptions.put(id, subscription);
-      return id;
+      activate(id, subscription);
+    } else {
+      LOG.warn(
+        "Subscription to {} is pending until its discovery file can be fetched",
+        options.discoveryURI()
+      );
+      pendingSubscriptions.put(id, subscription);
+      retryInit(
+        id,
+        subscription,
+        new UpdateStrategy(
+          Objects.requireNonNullElse(options.ttlPolicy(), TtlPolicy.DEFAULT),
+          Objects.requireNonNullElse(options.backoffPolicy(), BackoffPolicy.DEFAULT),
+          null,
+          UpdateClock.SYSTEM
+        )
+      );
     }
 
-    return null;
+    return id;
+  }
+
+  private void activate(String id, GbfsSubscription subscription) {
+    subscriptions.put(id, subscription);
+    scheduleUpdate(id, subscription, scheduler, 0);
+  }
+
+  /**
+   * Activate a pending subscription, unless it has been removed. Synchronized with
+   * {@link #unsubscribe(String)}, which would otherwise not find the subscription in
+   * either map while it is moved.
+   */
+  private synchronized void activatePending(String id, GbfsSubscription subscription) {
+    if (pendingSubscriptions.remove(id, subscription)) {
+      LOG.info("Pending subscription {} is activated", id);
+      activate(id, subscription);
+    }
+  }
+
+  /**
+   * Set up a pending subscription again after a backoff, until it succeeds or the
+   * subscription is removed
+   */
+  private void retryInit(
+    String id,
+    GbfsSubscription subscription,
+    UpdateStrategy backoff
+  ) {
+    backoff.rescheduleAfterFailure();
+    CompletableFuture.runAsync(
+      () -> {
+        if (pendingSubscriptions.get(id) != subscription) {
+          return;
+        }
+        subscription.init();
+        if (!subscription.getSetupComplete()) {
+          retryInit(id, subscription, backoff);
+        } else {
+          activatePending(id, subscription);
+        }
+      },
+      CompletableFuture.delayedExecutor(
+        backoff.getMillisUntilNextUpdate(),
+        TimeUnit.MILLISECONDS,
+        getDiscoveryExecutor()
+      )
+    );
   }
 }
@@ -18,25 +18,59 @@
 
 package org.entur.gbfs;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.entur.gbfs.authentication.RequestAuthenticator;
+import org.entur.gbfs.http.AdaptivePolling;
+import org.entur.gbfs.http.BackoffPolicy;
+import org.entur.gbfs.http.LoadLeveller;
+import org.entur.gbfs.http.RequestHedging;
+import org.entur.gbfs.http.Timeouts;
+import org.entur.gbfs.http.TtlPolicy;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * Options for a Gbfs Subscription
+ * Options for a Gbfs Subscription. Options beyond the basic ones are most easily set
+ * with a {@link #builder(URI)}.
  * @param discoveryURI The URI of the GBFS discovery file (gbfs.json)
  * @param languageCode The language code used as a key to look up GBFS files
  *                     in gbfs.json. For v3.x feeds this can be null, but is
  *                     required for v2.x feeds
- * @param minimumTtl Override GBFS files' ttl values with a minimum value.
+ * @param minimumTtl Override GBFS files' ttl values with a minimum value, in seconds.
+ *                   Applies to all files, in addition to the ttl policy
  * @param headers Headers that will be added to http requests when fetching
  *                GBFS files
  * @param requestAuthenticator An instance of {@link org.entur.gbfs.authentication.RequestAuthenticator}
  *                             for authentication of http requests for GBFS files.
- * @param timeout Custom timeout value for http requests
+ * @param timeout Custom timeout value for http requests, used as read timeout unless
+ *                the timeouts set one
  * @param enableValidation Will perform validation on all fetched data. The validation
  *                         result can be read in the consumer
+ * @param feedFetchExecutor If set, all files which are due for an update are fetched
+ *                          concurrently on this executor, instead of one at a time
+ * @param feedFetchDeadline Maximum time in milliseconds to wait for concurrent fetches.
+ *                          Files fetched after the deadline are published on the next
+ *                          update. Waits for all files if not set
+ * @param retainRawData If false, files are deserialized directly from the response
+ *                      stream, and their raw bytes are not kept unless validation is
+ *                      enabled. Defaults to true
+ * @param objectMapper Custom Jackson object mapper used to deserialize GBFS files, e.g.
+ *                     with the Blackbird module registered. Unknown enum values are
+ *                     always read as null
+ * @param ttlPolicy Limits on how often each file is fetched, and how soon failed
+ *                  requests are retried, and whether http cache headers are respected
+ * @param adaptivePolling If set, files are polled less often while they don't change
+ * @param loadLeveller Spreads the updates of files over time. Should be shared by
+ *                     subscriptions, and is set by the subscription manager if it has one
+ * @param backoffPolicy How long to wait before retrying a failed request, depending on
+ *                      its status code and Retry-After header
+ * @param timeouts Separate connect, connection request and read timeouts, and a
+ *                 deadline for each request, after which it is aborted
+ * @param requestHedging If set, requests which are slow compared to the recent latency
+ *                       of the file are hedged by a second request. Should be shared by
+ *                       subscriptions, as it limits the hedged requests to each host
  */
 public record GbfsSubscriptionOptions(
   URI discoveryURI,
@@ -45,5 +79,221 @@ public record GbfsSubscriptionOptions(
   @Nullable Map<String, String> headers,
   @Nullable RequestAuthenticator requestAuthenticator,
   @Nullable Long timeout,
-  @Nullable Boolean enableValidation
-) {}
+  @Nullable Boolean enableValidation,
+  @Nullable Executor feedFetchExecutor,
+  @Nullable Long feedFetchDeadline,
+  @Nullable Boolean retainRawData,
+  @Nullable ObjectMapper objectMapper,
+  @Nullable TtlPolicy ttlPolicy,
+  @Nullable AdaptivePolling adaptivePolling,
+  @Nullable LoadLeveller loadLeveller,
+  @Nullable BackoffPolicy backoffPolicy,
+  @Nullable Timeouts timeouts,
+  @Nullable RequestHedging requestHedging
+) {
+  public GbfsSubscriptionOptions(
+    URI discoveryURI,
+    @Nullable String languageCode,
+    @Nullable Long minimumTtl,
+    @Nullable Map<String, String> headers,
+    @Nullable RequestAuthenticator requestAuthenticator,
+    @Nullable Long timeout,
+    @Nullable Boolean enableValidation
+  ) {
+    this(
+      discoveryURI,
+      languageCode,
+      minimumTtl,
+      headers,
+      requestAuthenticator,
+      timeout,
+      enableValidation,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null,
+      null
+    );
+  }
+
+  /**
+   * Create a builder for options of the subscription to the given discovery file
+   */
+  public static Builder builder(URI discoveryURI) {
+    return new Builder(discoveryURI);
+  }
+
+  /**
+   * Create a builder initialized with a copy of these options
+   */
+  public Builder toBuilder() {
+    Builder builder = new Builder(discoveryURI);
+    builder.languageCode = languageCode;
+    builder.minimumTtl = minimumTtl;
+    builder.headers = headers;
+    builder.requestAuthenticator = requestAuthenticator;
+    builder.timeout = timeout;
+    builder.enableValidation = enableValidation;
+    builder.feedFetchExecutor = feedFetchExecutor;
+    builder.feedFetchDeadline = feedFetchDeadline;
+    builder.retainRawData = retainRawData;
+    builder.objectMapper = objectMapper;
+    builder.ttlPolicy = ttlPolicy;
+    builder.adaptivePolling = adaptivePolling;
+    builder.loadLeveller = loadLeveller;
+    builder.backoffPolicy = backoffPolicy;
+    builder.timeouts = timeouts;
+    builder.requestHedging = requestHedging;
+    return builder;
+  }
+
+  /**
+   * Copy the options, with files fetched concurrently on the given executor
+   */
+  public GbfsSubscriptionOptions withFeedFetchExecutor(Executor executor) {
+    return toBuilder().feedFetchExecutor(executor).build();
+  }
+
+  /**
+   * Copy the options, with updates spread over time by the given load leveller
+   */
+  public GbfsSubscriptionOptions withLoadLeveller(LoadLeveller loadLeveller) {
+    return toBuilder().loadLeveller(loadLeveller).build();
+  }
+
+  /**
+   * Builds options, with the options which are not set left as null. See
+   * {@link GbfsSubscriptionOptions} for the meaning of each option.
+   */
+  public static final class Builder {
+
+    private final URI discoveryURI;
+    private String languageCode;
+    private Long minimumTtl;
+    private Map<String, String> headers;
+    private RequestAuthenticator requestAuthenticator;
+    private Long timeout;
+    private Boolean enableValidation;
+    private Executor feedFetchExecutor;
+    private Long feedFetchDeadline;
+    private Boolean retainRawData;
+    private ObjectMapper objectMapper;
+    private TtlPolicy ttlPolicy;
+    private AdaptivePolling adaptivePolling;
+    private LoadLeveller loadLeveller;
+    private BackoffPolicy backoffPolicy;
+    private Timeouts timeouts;
+    private RequestHedging requestHedging;
+
+    private Builder(URI discoveryURI) {
+      this.discoveryURI = discoveryURI;
+    }
+
+    public Builder languageCode(String languageCode) {
+      this.languageCode = languageCode;
+      return this;
+    }
+
+    public Builder minimumTtl(Long minimumTtl) {
+      this.minimumTtl = minimumTtl;
+      return this;
+    }
+
+    public Builder headers(Map<String, String> headers) {
+      this.headers = headers;
+      return this;
+    }
+
+    public Builder requestAuthenticator(RequestAuthenticator requestAuthenticator) {
+      this.requestAuthenticator = requestAuthenticator;
+      return this;
+    }
+
+    public Builder timeout(Long timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+
+    public Builder enableValidation(Boolean enableValidation) {
+      this.enableValidation = enableValidation;
+      return this;
+    }
+
+    public Builder feedFetchExecutor(Executor feedFetchExecutor) {
+      this.feedFetchExecutor = feedFetchExecutor;
+      return this;
+    }
+
+    public Builder feedFetchDeadline(Long feedFetchDeadline) {
+      this.feedFetchDeadline = feedFetchDeadline;
+      return this;
+    }
+
+    public Builder retainRawData(Boolean retainRawData) {
+      this.retainRawData = retainRawData;
+      return this;
+    }
+
+    public Builder objectMapper(ObjectMapper objectMapper) {
+      this.objectMapper = objectMapper;
+      return this;
+    }
+
+    public Builder ttlPolicy(TtlPolicy ttlPolicy) {
+      this.ttlPolicy = ttlPolicy;
+      return this;
+    }
+
+    public Builder adaptivePolling(AdaptivePolling adaptivePolling) {
+      this.adaptivePolling = adaptivePolling;
+      return this;
+    }
+
+    public Builder loadLeveller(LoadLeveller loadLeveller) {
+      this.loadLeveller = loadLeveller;
+      return this;
+    }
+
+    public Builder backoffPolicy(BackoffPolicy backoffPolicy) {
+      this.backoffPolicy = backoffPolicy;
+      return this;
+    }
+
+    public Builder timeouts(Timeouts timeouts) {
+      this.timeouts = timeouts;
+      return this;
+    }
+
+    public Builder requestHedging(RequestHedging requestHedging) {
+      this.requestHedging = requestHedging;
+      return this;
+    }
+
+    public GbfsSubscriptionOptions build() {
+      return new GbfsSubscriptionOptions(
+        discoveryURI,
+        languageCode,
+        minimumTtl,
+        headers,
+        requestAuthenticator,
+        timeout,
+        enableValidation,
+        feedFetchExecutor,
+        feedFetchDeadline,
+        retainRawData,
+        objectMapper,
+        ttlPolicy,
+        adaptivePolling,
+        loadLeveller,
+        backoffPolicy,
+        timeouts,
+        requestHedging
+      );
+    }
+  }
+}
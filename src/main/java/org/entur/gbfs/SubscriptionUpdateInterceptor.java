@@ -10,7 +10,9 @@ public interface SubscriptionUpdateInterceptor {
   void beforeUpdate();
 
   /**
-   * Called after a subscription was updated
+   * Called after a subscription was updated. If the subscription was updated without
+   * blocking while waiting for responses, this may be called on another thread than
+   * {@link #beforeUpdate()}.
    */
   void afterUpdate();
 }
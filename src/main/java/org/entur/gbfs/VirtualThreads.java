@@ -0,0 +1,68 @@
+/*
+ *
+ *
+ *  * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ *  * the European Commission - subsequent versions of the EUPL (the "Licence");
+ *  * You may not use this work except in compliance with the Licence.
+ *  * You may obtain a copy of the Licence at:
+ *  *
+ *  *   https://joinup.ec.europa.eu/software/page/eupl
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the Licence is distributed on an "AS IS" basis,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the Licence for the specific language governing permissions and
+ *  * limitations under the Licence.
+ *
+ */
+
+package org.entur.gbfs;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads are available from Java 21. Since this library also runs on Java 17,
+ * the executor is looked up by reflection.
+ */
+public final class VirtualThreads {
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+  private VirtualThreads() {}
+
+  /**
+   * Check if the running JVM supports virtual threads
+   */
+  public static boolean isSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Create an executor which runs each task on a new virtual thread, or empty if
+   * virtual threads are not supported
+   */
+  public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(
+        (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null)
+      );
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static Method findFactoryMethod() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -2,7 +2,10 @@ package org.entur.gbfs.authentication;
 
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import org.dmfs.httpessentials.client.HttpRequestExecutor;
+import org.dmfs.httpessentials.exceptions.ProtocolException;
 import org.dmfs.httpessentials.httpurlconnection.HttpUrlConnectionExecutor;
 import org.dmfs.oauth2.client.*;
 import org.dmfs.oauth2.client.grants.ClientCredentialsGrant;
@@ -18,7 +21,11 @@ public class Oauth2ClientCredentialsGrantRequestAuthenticator
   private final HttpRequestExecutor executor = new HttpUrlConnectionExecutor();
   private final OAuth2Client client;
   private final OAuth2Scope scope;
-  private OAuth2AccessToken token;
+  private volatile OAuth2AccessToken token;
+
+  // a lock rather than synchronized, which would pin virtual threads while requesting
+  // a new token
+  private final Lock tokenLock = new ReentrantLock();
 
   public Oauth2ClientCredentialsGrantRequestAuthenticator(
     URI tokenUrl,
@@ -51,15 +58,38 @@ public class Oauth2ClientCredentialsGrantRequestAuthenticator
   }
 
   @Override
-  public synchronized void authenticateRequest(Map<String, String> httpHeaders)
+  public void authenticateRequest(Map<String, String> httpHeaders)
     throws RequestAuthenticationException {
     try {
-      if (token == null || token.expirationDate().before(DateTime.now())) {
-        token = new ClientCredentialsGrant(client, scope).accessToken(executor);
+      OAuth2AccessToken currentToken = token;
+      if (isExpired(currentToken)) {
+        currentToken = refreshToken();
       }
-      httpHeaders.put("Authorization", String.format("Bearer %s", token.accessToken()));
+      httpHeaders.put(
+        "Authorization",
+        String.format("Bearer %s", currentToken.accessToken())
+      );
     } catch (Exception e) {
       throw new RequestAuthenticationException(e);
     }
   }
+
+  /**
+   * Only one request fetches a new token, the others wait for it
+   */
+  private OAuth2AccessToken refreshToken() throws Exception {
+    tokenLock.lock();
+    try {
+      if (isExpired(token)) {
+        token = new ClientCredentialsGrant(client, scope).accessToken(executor);
+      }
+      return token;
+    } finally {
+      tokenLock.unlock();
+    }
+  }
+
+  private static boolean isExpired(OAuth2AccessToken token) throws ProtocolException {
+    return token == null || token.expirationDate().before(DateTime.now());
+  }
 }
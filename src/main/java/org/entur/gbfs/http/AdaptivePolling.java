@@ -0,0 +1,22 @@
+package org.entur.gbfs.http;
+
+/**
+ * Poll files less often while they don't change. Each time a file is fetched without
+ * changes, the time until it is fetched again is multiplied by the growth factor, up to
+ * the maximum interval. As soon as a change is seen, the file is polled according to its
+ * ttl again.
+ *
+ * @param growthFactor How much to lengthen the interval for each unchanged poll
+ * @param maximumInterval The longest interval between polls in seconds, unless the
+ *                        ttl of the file is longer
+ */
+public record AdaptivePolling(double growthFactor, int maximumInterval) {
+  public AdaptivePolling {
+    if (growthFactor < 1) {
+      throw new IllegalArgumentException("growthFactor must be at least 1");
+    }
+    if (maximumInterval < 0) {
+      throw new IllegalArgumentException("maximumInterval must not be negative");
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.entur.gbfs.http;
+
+/**
+ * Update strategy which lengthens the interval between polls while a file doesn't change,
+ * see {@link AdaptivePolling}. Each file has its own strategy, so the interval adapts to
+ * how often each file actually changes.
+ */
+public class AdaptiveUpdateStrategy extends UpdateStrategy {
+
+  private final AdaptivePolling adaptivePolling;
+  private int unchangedCount = 0;
+
+  public AdaptiveUpdateStrategy(TtlPolicy ttlPolicy, AdaptivePolling adaptivePolling) {
+    this(ttlPolicy, adaptivePolling, null);
+  }
+
+  public AdaptiveUpdateStrategy(
+    TtlPolicy ttlPolicy,
+    AdaptivePolling adaptivePolling,
+    LoadLeveller loadLeveller
+  ) {
+    this(ttlPolicy, adaptivePolling, loadLeveller, UpdateClock.SYSTEM);
+  }
+
+  public AdaptiveUpdateStrategy(
+    TtlPolicy ttlPolicy,
+    AdaptivePolling adaptivePolling,
+    LoadLeveller loadLeveller,
+    UpdateClock clock
+  ) {
+    this(ttlPolicy, BackoffPolicy.DEFAULT, adaptivePolling, loadLeveller, clock);
+  }
+
+  public AdaptiveUpdateStrategy(
+    TtlPolicy ttlPolicy,
+    BackoffPolicy backoffPolicy,
+    AdaptivePolling adaptivePolling,
+    LoadLeveller loadLeveller,
+    UpdateClock clock
+  ) {
+    super(ttlPolicy, backoffPolicy, loadLeveller, clock);
+    this.adaptivePolling = adaptivePolling;
+  }
+
+  @Override
+  public void scheduleNextUpdate(Integer lastUpdated, Integer ttl) {
+    unchangedCount = 0;
+    super.scheduleNextUpdate(lastUpdated, ttl);
+  }
+
+  @Override
+  public void scheduleNextUpdateUnchanged(Integer responseTime, Integer ttl) {
+    unchangedCount++;
+    int fileTtl = ttl == null ? 0 : ttl;
+    // a ttl of 0 would not grow
+    double interval = Math.min(
+      adaptivePolling.maximumInterval(),
+      Math.max(1, fileTtl) * Math.pow(adaptivePolling.growthFactor(), unchangedCount)
+    );
+    super.scheduleNextUpdate(responseTime, Math.max(fileTtl, (int) interval));
+  }
+
+  /**
+   * Get the number of consecutive polls without changes
+   */
+  public int getUnchangedCount() {
+    return unchangedCount;
+  }
+}
@@ -0,0 +1,234 @@
+package org.entur.gbfs.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Blocking transport based on Apache HttpClient. Requests are made on the calling
+ * thread, and the returned future is already completed. Connections are pooled and
+ * kept alive between requests.
+ * <p>
+ * If a request has a deadline, it is aborted when the deadline is exceeded, also while
+ * its body is being read.
+ * </p>
+ */
+public class ApacheHttpTransport implements GBFSHttpTransport {
+
+  private static final long TIMEOUT_CONNECTION = 5000;
+  private static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+  private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+  private static final long DEFAULT_MAX_IDLE_MILLIS = 60000;
+  private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+  private final CloseableHttpClient httpClient;
+
+  public ApacheHttpTransport() {
+    this(
+      DEFAULT_MAX_CONNECTIONS_TOTAL,
+      DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+      DEFAULT_KEEP_ALIVE_MILLIS,
+      DEFAULT_MAX_IDLE_MILLIS
+    );
+  }
+
+  /**
+   * Create a new transport with its own connection pool
+   *
+   * @param maxConnectionsTotal The maximum number of pooled connections
+   * @param maxConnectionsPerRoute The maximum number of pooled connections per host
+   * @param keepAliveMillis How long an idle connection may be reused, if the server
+   *                        doesn't say otherwise
+   * @param maxIdleMillis Idle connections older than this are evicted from the pool
+   */
+  public ApacheHttpTransport(
+    int maxConnectionsTotal,
+    int maxConnectionsPerRoute,
+    long keepAliveMillis,
+    long maxIdleMillis
+  ) {
+    PoolingHttpClientConnectionManager connectionManager =
+      new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnectionsTotal);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+    connectionManager.setDefaultSocketConfig(
+      SocketConfig.custom().setSoTimeout((int) TIMEOUT_CONNECTION).build()
+    );
+
+    httpClient =
+      HttpClientBuilder
+        .create()
+        .setConnectionManager(connectionManager)
+        .setRoutePlanner(new SystemDefaultRoutePlanner(null))
+        .setKeepAliveStrategy(keepAliveStrategy(keepAliveMillis))
+        // compressed responses are decoded by ContentDecoder, to count the received bytes
+        .disableContentCompression()
+        .evictExpiredConnections()
+        .evictIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  @Override
+  public CompletableFuture<FetchResult> fetch(
+    URI uri,
+    long timeout,
+    Map<String, String> requestHeaderValues
+  ) {
+    return fetch(uri, Timeouts.ofReadTimeout(timeout), requestHeaderValues);
+  }
+
+  @Override
+  public CompletableFuture<FetchResult> fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues
+  ) {
+    return fetch(uri, timeouts, requestHeaderValues, null);
+  }
+
+  /**
+   * The request is aborted from the thread completing the abort signal, while the
+   * calling thread is blocked in the request
+   */
+  @Override
+  public CompletableFuture<FetchResult> fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CompletableFuture<?> abortSignal
+  ) {
+    try {
+      return CompletableFuture.completedFuture(
+        execute(uri, timeouts, requestHeaderValues, abortSignal)
+      );
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private FetchResult execute(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CompletableFuture<?> abortSignal
+  ) throws IOException {
+    HttpGet httpget = new HttpGet(uri);
+    if (requestHeaderValues != null) {
+      for (Map.Entry<String, String> entry : requestHeaderValues.entrySet()) {
+        httpget.addHeader(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!httpget.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+      httpget.addHeader(HttpHeaders.ACCEPT_ENCODING, ContentDecoder.ACCEPT_ENCODING);
+    }
+    httpget.setConfig(getRequestConfig(timeouts));
+    if (abortSignal != null) {
+      abortSignal.thenRun(httpget::abort);
+    }
+    ScheduledFuture<?> abort = DeadlineScheduler.schedule(
+      httpget::abort,
+      timeouts.deadline()
+    );
+    CloseableHttpResponse response;
+    try {
+      response = httpClient.execute(httpget);
+    } catch (IOException e) {
+      DeadlineScheduler.cancel(abort);
+      if (abortSignal != null && abortSignal.isDone()) {
+        throw new IOException("Aborted request to " + uri, e);
+      }
+      if (httpget.isAborted()) {
+        throw new IOException(
+          "Deadline of " + timeouts.deadline() + " ms exceeded for " + uri,
+          e
+        );
+      }
+      throw e;
+    }
+    int statusCode = response.getStatusLine().getStatusCode();
+    Map<String, String> headers = new HashMap<>();
+    for (Header header : response.getAllHeaders()) {
+      headers.putIfAbsent(header.getName(), header.getValue());
+    }
+
+    HttpEntity entity = response.getEntity();
+    if (statusCode != FetchResult.HTTP_OK || entity == null) {
+      // consume the body, so the connection can be returned to the pool
+      EntityUtils.consumeQuietly(entity);
+      response.close();
+      DeadlineScheduler.cancel(abort);
+      return new FetchResult(statusCode, headers, null);
+    }
+
+    // closing the stream releases the connection back to the pool
+    CountingInputStream received = new CountingInputStream(
+      DeadlineScheduler.cancelOnClose(entity.getContent(), abort)
+    );
+    Header contentEncoding = entity.getContentEncoding();
+    try {
+      return new FetchResult(
+        statusCode,
+        headers,
+        ContentDecoder.decode(
+          received,
+          contentEncoding == null ? null : contentEncoding.getValue()
+        ),
+        received::getCount
+      );
+    } catch (IOException e) {
+      response.close();
+      DeadlineScheduler.cancel(abort);
+      throw e;
+    }
+  }
+
+  /**
+   * Close the connection pool. Pending requests will fail.
+   */
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  private RequestConfig getRequestConfig(Timeouts timeouts) {
+    return RequestConfig
+      .custom()
+      .setCookieSpec(CookieSpecs.STANDARD)
+      .setConnectTimeout((int) timeouts.connectTimeoutOrDefault())
+      .setConnectionRequestTimeout((int) timeouts.connectionRequestTimeoutOrDefault())
+      .setSocketTimeout((int) timeouts.readTimeoutOrDefault())
+      .build();
+  }
+
+  private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMillis) {
+    return (response, context) -> {
+      long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+        response,
+        context
+      );
+      return keepAlive > 0 ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+    };
+  }
+}
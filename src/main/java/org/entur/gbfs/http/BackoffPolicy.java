@@ -0,0 +1,95 @@
+package org.entur.gbfs.http;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * How long to wait before retrying a failed request, depending on why it failed. All
+ * values are in seconds.
+ * <ul>
+ *   <li>If the response has a Retry-After header, e.g. with status 429 or 503, the
+ *   request is retried after the given time.</li>
+ *   <li>Other client errors (4xx) are unlikely to go away by themselves, so the backoff
+ *   starts at the client error backoff.</li>
+ *   <li>Server errors (5xx) and too many requests without Retry-After mean that the host
+ *   is up, but overloaded or broken, so the backoff starts at the server error backoff,
+ *   to not add to its load.</li>
+ *   <li>Connection errors and invalid files are retried after 1 second.</li>
+ * </ul>
+ * The backoff doubles with each failure.
+ * The backoff is limited by the maximum backoff, and by the minimum retry interval of the
+ * {@link TtlPolicy}.
+ *
+ * @param clientErrorBackoff The first backoff after a client error. Defaults to 300
+ * @param serverErrorBackoff The first backoff after a server error. Defaults to 5
+ * @param maximumBackoff The longest backoff, also for Retry-After. Defaults to 3600
+ * @param respectRetryAfter Whether to wait as long as the Retry-After header says.
+ *                          Defaults to true
+ */
+public record BackoffPolicy(
+  @Nullable Integer clientErrorBackoff,
+  @Nullable Integer serverErrorBackoff,
+  @Nullable Integer maximumBackoff,
+  @Nullable Boolean respectRetryAfter
+) {
+  public static final BackoffPolicy DEFAULT = new BackoffPolicy(null, null, null, null);
+
+  private static final int DEFAULT_CLIENT_ERROR_BACKOFF = 300;
+  private static final int DEFAULT_SERVER_ERROR_BACKOFF = 5;
+  private static final int DEFAULT_MAXIMUM_BACKOFF = 3600;
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+  /**
+   * Get the time to wait before retrying, without random spread
+   *
+   * @param failedAttemptsCount The number of failed attempts, including this one
+   * @param statusCode The status code of the response, or null if there was none
+   * @param retryAfterMillis The time given by the Retry-After header, or null
+   * @return The time to wait in milliseconds
+   */
+  long backoffMillis(
+    int failedAttemptsCount,
+    @Nullable Integer statusCode,
+    @Nullable Long retryAfterMillis
+  ) {
+    long maximum = 1000L * valueOrDefault(maximumBackoff, DEFAULT_MAXIMUM_BACKOFF);
+    if (usesRetryAfter(retryAfterMillis)) {
+      return Math.min(maximum, retryAfterMillis);
+    }
+    long initial;
+    if (isClientError(statusCode)) {
+      initial = 1000L * valueOrDefault(clientErrorBackoff, DEFAULT_CLIENT_ERROR_BACKOFF);
+    } else if (isServerError(statusCode)) {
+      initial = 1000L * valueOrDefault(serverErrorBackoff, DEFAULT_SERVER_ERROR_BACKOFF);
+    } else {
+      initial = 1000L;
+    }
+    return (long) Math.min(maximum, initial * Math.pow(2, failedAttemptsCount - 1.0));
+  }
+
+  /**
+   * Whether the backoff is given by the Retry-After header
+   */
+  boolean usesRetryAfter(@Nullable Long retryAfterMillis) {
+    return retryAfterMillis != null && !Boolean.FALSE.equals(respectRetryAfter);
+  }
+
+  private static int valueOrDefault(@Nullable Integer value, int defaultValue) {
+    return value == null ? defaultValue : value;
+  }
+
+  private static boolean isClientError(@Nullable Integer statusCode) {
+    return (
+      statusCode != null &&
+      statusCode >= 400 &&
+      statusCode < 500 &&
+      statusCode != HTTP_TOO_MANY_REQUESTS
+    );
+  }
+
+  private static boolean isServerError(@Nullable Integer statusCode) {
+    return (
+      statusCode != null &&
+      (statusCode >= 500 || statusCode == HTTP_TOO_MANY_REQUESTS)
+    );
+  }
+}
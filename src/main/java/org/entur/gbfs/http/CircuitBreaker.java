@@ -0,0 +1,237 @@
+package org.entur.gbfs.http;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops requests to hosts which are down, so that the feeds of a dead host don't hold
+ * threads until their requests time out. Each host has its own circuit:
+ * <ul>
+ *   <li>Closed: requests are made. After a number of consecutive failed requests, the
+ *   circuit is opened.</li>
+ *   <li>Open: requests are rejected without being made. After a while, the circuit is
+ *   half open.</li>
+ *   <li>Half open: a single request is made as a probe, while other requests are still
+ *   rejected. If the probe succeeds, the circuit is closed, otherwise it is opened
+ *   again.</li>
+ * </ul>
+ * A request fails if no response is received, or if the response has a 5xx status code.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  /**
+   * How long requests are rejected while the probe of a half open circuit is in progress
+   */
+  private static final long PROBE_WAIT_MILLIS = 1000;
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+  }
+
+  private final int failureThreshold;
+  private final long openMillis;
+  private final UpdateClock clock;
+  private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+  /**
+   * @param failureThreshold The number of consecutive failed requests which opens the
+   *                         circuit of a host
+   * @param openMillis How long the circuit stays open before a probe is made
+   */
+  public CircuitBreaker(int failureThreshold, long openMillis) {
+    this(failureThreshold, openMillis, UpdateClock.SYSTEM);
+  }
+
+  public CircuitBreaker(int failureThreshold, long openMillis, UpdateClock clock) {
+    if (failureThreshold < 1 || openMillis < 0) {
+      throw new IllegalArgumentException("Invalid circuit breaker limits");
+    }
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Get the state of the circuit of a host
+   */
+  public State getState(String hostName) {
+    Circuit circuit = circuits.get(hostName);
+    return circuit == null ? State.CLOSED : circuit.getState();
+  }
+
+  /**
+   * Get the time until a request to the host of the URI may be made, or 0 if it may be
+   * made now
+   */
+  long getMillisUntilRetry(URI uri) {
+    Circuit circuit = uri.getHost() == null ? null : circuits.get(uri.getHost());
+    return circuit == null ? 0 : circuit.getMillisUntilRetry();
+  }
+
+  /**
+   * Check if a request to the host of the URI may be made. If the circuit is half open,
+   * the request is the probe.
+   */
+  Attempt tryAcquire(URI uri) {
+    return uri.getHost() == null ? Attempt.ALLOWED : circuit(uri).tryAcquire();
+  }
+
+  /**
+   * Record the outcome of a request made after {@link #tryAcquire(URI)}
+   */
+  void record(URI uri, boolean success) {
+    if (uri.getHost() != null) {
+      circuit(uri).record(uri.getHost(), success);
+    }
+  }
+
+  /**
+   * Record that a request allowed by {@link #tryAcquire(URI)} was not made after all.
+   * If it was the probe of a half open circuit, another request may be the probe.
+   */
+  void cancel(URI uri, Attempt attempt) {
+    if (uri.getHost() != null) {
+      circuit(uri).cancel(attempt);
+    }
+  }
+
+  private Circuit circuit(URI uri) {
+    return circuits.computeIfAbsent(uri.getHost(), host -> new Circuit());
+  }
+
+  private long nowMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(clock.nanoTime());
+  }
+
+  /**
+   * The outcome of {@link #tryAcquire(URI)}, which identifies the probe of a half open
+   * circuit
+   */
+  static final class Attempt {
+
+    private static final Attempt ALLOWED = new Attempt(0);
+
+    private final long retryInMillis;
+
+    private Attempt(long retryInMillis) {
+      this.retryInMillis = retryInMillis;
+    }
+
+    boolean isAllowed() {
+      return retryInMillis == 0;
+    }
+
+    /**
+     * Get the time until a request may be retried, or 0 if it may be made now
+     */
+    long getRetryInMillis() {
+      return retryInMillis;
+    }
+  }
+
+  private final class Circuit {
+
+    private final Lock lock = new ReentrantLock();
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+
+    /**
+     * The request in progress as the probe of the half open circuit, or null
+     */
+    private Attempt probe;
+
+    State getState() {
+      lock.lock();
+      try {
+        return state;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    long getMillisUntilRetry() {
+      lock.lock();
+      try {
+        return switch (state) {
+          case CLOSED -> 0;
+          case OPEN -> Math.max(0, openedAt + openMillis - nowMillis());
+          case HALF_OPEN -> probe != null ? PROBE_WAIT_MILLIS : 0;
+        };
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    Attempt tryAcquire() {
+      lock.lock();
+      try {
+        if (state == State.OPEN && nowMillis() - openedAt >= openMillis) {
+          state = State.HALF_OPEN;
+          probe = null;
+        }
+        if (state == State.HALF_OPEN && probe == null) {
+          probe = new Attempt(0);
+          return probe;
+        }
+        long retryInMillis = getMillisUntilRetry();
+        return retryInMillis == 0 ? Attempt.ALLOWED : new Attempt(retryInMillis);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void record(String hostName, boolean success) {
+      lock.lock();
+      try {
+        if (success) {
+          if (state != State.CLOSED) {
+            LOG.info("Closed circuit of {}", hostName);
+          }
+          state = State.CLOSED;
+          consecutiveFailures = 0;
+          probe = null;
+          return;
+        }
+
+        consecutiveFailures++;
+        if (
+          state == State.HALF_OPEN ||
+          (state == State.CLOSED && consecutiveFailures >= failureThreshold)
+        ) {
+          LOG.warn(
+            "Opened circuit of {} after {} failed request(s)",
+            hostName,
+            consecutiveFailures
+          );
+          state = State.OPEN;
+          openedAt = nowMillis();
+          probe = null;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void cancel(Attempt attempt) {
+      lock.lock();
+      try {
+        if (probe == attempt) {
+          probe = null;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package org.entur.gbfs.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request to a host whose circuit is open, see
+ * {@link CircuitBreaker}
+ */
+public class CircuitOpenException extends IOException {
+
+  private final long retryInMillis;
+
+  public CircuitOpenException(String host, long retryInMillis) {
+    super("Circuit of " + host + " is open, retry in " + retryInMillis + " ms");
+    this.retryInMillis = retryInMillis;
+  }
+
+  /**
+   * Get the time until a request to the host may be made
+   */
+  public long getRetryInMillis() {
+    return retryInMillis;
+  }
+}
@@ -0,0 +1,61 @@
+package org.entur.gbfs.http;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates how far the clock of each host is ahead of ours, from the Date header of its
+ * responses. The last_updated of a file is given by the clock of the host, so it must be
+ * corrected by this offset before it is compared with our clock.
+ * <p>
+ * The Date header has a resolution of a second, so single samples are smoothed with an
+ * exponentially weighted moving average.
+ * </p>
+ */
+final class ClockSkewEstimator {
+
+  private static final String DATE = "Date";
+
+  /**
+   * Weight of a new sample in the smoothed offset
+   */
+  private static final double SMOOTHING = 0.2;
+
+  private final Map<String, Double> offsets = new ConcurrentHashMap<>();
+
+  /**
+   * Add a sample from a response
+   *
+   * @param requestTime Our time when the request was sent, in epoch milliseconds
+   * @param responseTime Our time when the response was received, in epoch milliseconds
+   */
+  void record(URI uri, long requestTime, long responseTime, FetchResult response) {
+    Optional<Instant> date = response.dateHeader(DATE);
+    if (uri.getHost() == null || date.isEmpty()) {
+      return;
+    }
+    // the Date header is truncated to the second, and a cached response was created
+    // Age seconds ago
+    double hostTime = date.get().toEpochMilli() + 500 + response.ageSeconds() * 1000;
+    // assume the response was created halfway through the request
+    double sample = hostTime - (requestTime + responseTime) / 2.0;
+    offsets.merge(
+      uri.getHost(),
+      sample,
+      (offset, newSample) -> offset + SMOOTHING * (newSample - offset)
+    );
+  }
+
+  /**
+   * Get the number of milliseconds the clock of the host is ahead of ours, or empty if
+   * the host has not sent any Date header
+   */
+  OptionalLong getClockSkewMillis(URI uri) {
+    Double offset = uri.getHost() == null ? null : offsets.get(uri.getHost());
+    return offset == null ? OptionalLong.empty() : OptionalLong.of(Math.round(offset));
+  }
+}
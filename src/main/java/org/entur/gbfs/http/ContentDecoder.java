@@ -0,0 +1,106 @@
+package org.entur.gbfs.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import org.apache.http.client.entity.DeflateInputStream;
+
+/**
+ * Decodes compressed response bodies while they are read
+ */
+final class ContentDecoder {
+
+  static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  private ContentDecoder() {}
+
+  /**
+   * Wrap the body in a decoder for its content encoding
+   *
+   * @param body The body as received
+   * @param contentEncoding The value of the Content-Encoding header, or null
+   */
+  static InputStream decode(InputStream body, String contentEncoding)
+    throws IOException {
+    String encoding = normalize(contentEncoding);
+    switch (encoding) {
+      case "gzip", "x-gzip":
+        return new GZIPInputStream(body);
+      case "deflate":
+        // handles both zlib-wrapped and raw deflate streams
+        return new DeflateInputStream(body);
+      case "identity", "":
+        return body;
+      default:
+        throw new IOException("Unsupported content encoding " + encoding);
+    }
+  }
+
+  /**
+   * Same as {@link #decode(InputStream, String)}, but the decoder is created when the
+   * body is first read. Creating a gzip decoder reads the header of the body, which
+   * would block a thread completing the response.
+   */
+  static InputStream decodeOnRead(InputStream body, String contentEncoding)
+    throws IOException {
+    String encoding = normalize(contentEncoding);
+    switch (encoding) {
+      case "gzip", "x-gzip", "deflate":
+        return new DecodeOnReadInputStream(body, encoding);
+      case "identity", "":
+        return body;
+      default:
+        throw new IOException("Unsupported content encoding " + encoding);
+    }
+  }
+
+  private static String normalize(String contentEncoding) {
+    return contentEncoding == null
+      ? ""
+      : contentEncoding.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private static final class DecodeOnReadInputStream extends InputStream {
+
+    private final InputStream body;
+    private final String encoding;
+    private InputStream decoded;
+
+    private DecodeOnReadInputStream(InputStream body, String encoding) {
+      this.body = body;
+      this.encoding = encoding;
+    }
+
+    private InputStream decoded() throws IOException {
+      if (decoded == null) {
+        decoded = decode(body, encoding);
+      }
+      return decoded;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return decoded().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return decoded().read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return decoded == null ? 0 : decoded.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (decoded == null) {
+        body.close();
+      } else {
+        decoded.close();
+      }
+    }
+  }
+}
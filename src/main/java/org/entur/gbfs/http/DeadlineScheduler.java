@@ -0,0 +1,78 @@
+package org.entur.gbfs.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts requests of the transports which exceed their deadline. The abort is cancelled
+ * when the request completes before it, so that it doesn't keep the request until the
+ * deadline.
+ */
+final class DeadlineScheduler {
+
+  /**
+   * Aborting a request only closes its connection or cancels its exchange, so a single
+   * thread is enough
+   */
+  private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+  private DeadlineScheduler() {}
+
+  private static ScheduledThreadPoolExecutor createScheduler() {
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+      1,
+      runnable -> {
+        Thread thread = new Thread(runnable, "gbfs-request-deadline");
+        thread.setDaemon(true);
+        return thread;
+      }
+    );
+    // most requests complete before their deadline
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
+  /**
+   * Schedule the abort of a request at its deadline
+   *
+   * @return The scheduled abort, or null if the request has no deadline
+   */
+  static ScheduledFuture<?> schedule(Runnable abort, Long deadline) {
+    return deadline == null
+      ? null
+      : SCHEDULER.schedule(abort, deadline, TimeUnit.MILLISECONDS);
+  }
+
+  static void cancel(ScheduledFuture<?> abort) {
+    if (abort != null) {
+      abort.cancel(false);
+    }
+  }
+
+  /**
+   * Get the number of aborts waiting for their deadline
+   */
+  static int getScheduledCount() {
+    return SCHEDULER.getQueue().size();
+  }
+
+  /**
+   * The request may be aborted until its body has been read
+   */
+  static InputStream cancelOnClose(InputStream content, ScheduledFuture<?> abort) {
+    if (abort == null) {
+      return content;
+    }
+    return new FilterInputStream(content) {
+      @Override
+      public void close() throws IOException {
+        cancel(abort);
+        super.close();
+      }
+    };
+  }
+}
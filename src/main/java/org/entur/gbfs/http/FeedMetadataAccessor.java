@@ -0,0 +1,124 @@
+package org.entur.gbfs.http;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Date;
+
+/**
+ * Reads last_updated and ttl from a deserialized GBFS file. The classes of the different
+ * GBFS versions do not share a supertype, so the getters are looked up once for each
+ * class and cached as method handles. Version 2 has last_updated as epoch seconds, and
+ * version 3 as a date, which is converted to epoch seconds.
+ */
+final class FeedMetadataAccessor {
+
+  private static final String GET_TTL = "getTtl";
+  private static final MethodType GETTER_TYPE = MethodType.methodType(
+    Integer.class,
+    Object.class
+  );
+  private static final MethodHandle DATE_TO_EPOCH_SECONDS;
+
+  static {
+    try {
+      DATE_TO_EPOCH_SECONDS =
+        MethodHandles
+          .lookup()
+          .findStatic(
+            FeedMetadataAccessor.class,
+            "toEpochSeconds",
+            MethodType.methodType(Integer.class, Date.class)
+          );
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static final ClassValue<FeedMetadataAccessor> ACCESSORS = new ClassValue<>() {
+    @Override
+    protected FeedMetadataAccessor computeValue(Class<?> type) {
+      return new FeedMetadataAccessor(type);
+    }
+  };
+
+  private final Class<?> type;
+  private final MethodHandle lastUpdated;
+  private final MethodHandle ttl;
+
+  private FeedMetadataAccessor(Class<?> type) {
+    this.type = type;
+    this.lastUpdated = findLastUpdated(type);
+    this.ttl = findGetter(type, GET_TTL);
+  }
+
+  static FeedMetadataAccessor forClass(Class<?> type) {
+    return ACCESSORS.get(type);
+  }
+
+  /**
+   * Get last_updated in epoch seconds
+   *
+   * @throws IllegalStateException if the class has no getter for last_updated
+   */
+  Integer getLastUpdated(Object data) {
+    return invoke(lastUpdated, GBFSFeedUpdater.GET_LAST_UPDATED, data);
+  }
+
+  /**
+   * @throws IllegalStateException if the class has no getter for ttl
+   */
+  Integer getTtl(Object data) {
+    return invoke(ttl, GET_TTL, data);
+  }
+
+  private Integer invoke(MethodHandle getter, String name, Object data) {
+    if (getter == null) {
+      throw new IllegalStateException("No method " + name + " in " + type.getName());
+    }
+    try {
+      return (Integer) getter.invokeExact(data);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static MethodHandle findLastUpdated(Class<?> type) {
+    MethodHandle getter = findMethod(type, GBFSFeedUpdater.GET_LAST_UPDATED);
+    if (getter == null) {
+      return null;
+    }
+    Class<?> returnType = getter.type().returnType();
+    if (returnType.equals(Integer.class)) {
+      return getter.asType(GETTER_TYPE);
+    }
+    if (returnType.equals(Date.class)) {
+      return MethodHandles
+        .filterReturnValue(getter, DATE_TO_EPOCH_SECONDS)
+        .asType(GETTER_TYPE);
+    }
+    return null;
+  }
+
+  private static MethodHandle findGetter(Class<?> type, String name) {
+    MethodHandle getter = findMethod(type, name);
+    if (getter == null || !getter.type().returnType().equals(Integer.class)) {
+      return null;
+    }
+    return getter.asType(GETTER_TYPE);
+  }
+
+  private static MethodHandle findMethod(Class<?> type, String name) {
+    try {
+      return MethodHandles.publicLookup().unreflect(type.getMethod(name));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  private static Integer toEpochSeconds(Date date) {
+    return Math.toIntExact(date.getTime() / 1000);
+  }
+}
@@ -0,0 +1,91 @@
+package org.entur.gbfs.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.concurrent.Executor;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Options of a {@link GBFSFeedUpdater} beyond the basic ones, most easily set with a
+ * {@link #builder()}.
+ *
+ * @param retainRawData If false, the file is deserialized directly from the response
+ *                      stream without buffering it, and
+ *                      {@link GBFSFeedUpdater#getRawData()} is empty. Defaults to true
+ * @param objectMapper Custom object mapper used to deserialize the file, e.g. with
+ *                     additional modules registered. Uses a default mapper if not set
+ * @param timeouts Timeouts of the requests. If not set, only the timeout given to the
+ *                 updater is used, as read timeout. The timeout given to the updater is
+ *                 used if these have no read timeout
+ * @param requestHedging If set, slow requests are hedged by a second request, within
+ *                       the budget of the host
+ * @param responseExecutor Executor on which the responses of asynchronous updates are
+ *                         read and deserialized, unless they were received right away.
+ *                         Reading the body may block, so it is not done on the thread
+ *                         of the transport. Defaults to the common fork join pool
+ */
+public record FeedUpdaterOptions(
+  @Nullable Boolean retainRawData,
+  @Nullable ObjectMapper objectMapper,
+  @Nullable Timeouts timeouts,
+  @Nullable RequestHedging requestHedging,
+  @Nullable Executor responseExecutor
+) {
+  public static final FeedUpdaterOptions DEFAULT = builder().build();
+
+  /**
+   * Create a builder for options of a feed updater
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builds options, with the options which are not set left as null. See
+   * {@link FeedUpdaterOptions} for the meaning of each option.
+   */
+  public static final class Builder {
+
+    private Boolean retainRawData;
+    private ObjectMapper objectMapper;
+    private Timeouts timeouts;
+    private RequestHedging requestHedging;
+    private Executor responseExecutor;
+
+    private Builder() {}
+
+    public Builder retainRawData(Boolean retainRawData) {
+      this.retainRawData = retainRawData;
+      return this;
+    }
+
+    public Builder objectMapper(ObjectMapper objectMapper) {
+      this.objectMapper = objectMapper;
+      return this;
+    }
+
+    public Builder timeouts(Timeouts timeouts) {
+      this.timeouts = timeouts;
+      return this;
+    }
+
+    public Builder requestHedging(RequestHedging requestHedging) {
+      this.requestHedging = requestHedging;
+      return this;
+    }
+
+    public Builder responseExecutor(Executor responseExecutor) {
+      this.responseExecutor = responseExecutor;
+      return this;
+    }
+
+    public FeedUpdaterOptions build() {
+      return new FeedUpdaterOptions(
+        retainRawData,
+        objectMapper,
+        timeouts,
+        requestHedging,
+        responseExecutor
+      );
+    }
+  }
+}
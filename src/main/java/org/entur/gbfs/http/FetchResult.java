@@ -0,0 +1,176 @@
+package org.entur.gbfs.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The response to a request for a GBFS file. Header names are case-insensitive.
+ * The body is only present for successful responses, and must be closed after use.
+ *
+ * @param statusCode The http status code of the response
+ * @param headers The response headers, with the first value of each header
+ * @param body The response body, or null
+ * @param receivedByteCount Counts the bytes of the body received over the wire, before
+ *                          it is decompressed. Null if not known
+ */
+public record FetchResult(
+  int statusCode,
+  Map<String, String> headers,
+  InputStream body,
+  LongSupplier receivedByteCount
+)
+  implements Closeable {
+  public static final int HTTP_OK = 200;
+  public static final int HTTP_NOT_MODIFIED = 304;
+
+  private static final String CACHE_CONTROL = "Cache-Control";
+  private static final String EXPIRES = "Expires";
+  private static final String DATE = "Date";
+  private static final String AGE = "Age";
+  private static final String RETRY_AFTER = "Retry-After";
+  private static final String MAX_AGE = "max-age=";
+
+  public FetchResult {
+    Map<String, String> caseInsensitiveHeaders = new TreeMap<>(
+      String.CASE_INSENSITIVE_ORDER
+    );
+    if (headers != null) {
+      caseInsensitiveHeaders.putAll(headers);
+    }
+    headers = Collections.unmodifiableMap(caseInsensitiveHeaders);
+  }
+
+  public FetchResult(int statusCode, Map<String, String> headers, InputStream body) {
+    this(statusCode, headers, body, null);
+  }
+
+  /**
+   * The number of bytes received for the body so far, or -1 if not known. Read this
+   * after the body has been consumed.
+   */
+  public long receivedBytes() {
+    return receivedByteCount == null ? -1 : receivedByteCount.getAsLong();
+  }
+
+  public boolean isOk() {
+    return statusCode == HTTP_OK;
+  }
+
+  public boolean isNotModified() {
+    return statusCode == HTTP_NOT_MODIFIED;
+  }
+
+  public Optional<String> header(String name) {
+    return Optional.ofNullable(headers.get(name));
+  }
+
+  /**
+   * Parse a header containing an http date, e.g. Date or Last-Modified
+   */
+  public Optional<Instant> dateHeader(String name) {
+    return header(name)
+      .flatMap(value -> {
+        try {
+          return Optional.of(
+            ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+          );
+        } catch (DateTimeParseException e) {
+          return Optional.empty();
+        }
+      });
+  }
+
+  /**
+   * The number of seconds the response has been in a cache, from the Age header, or 0
+   */
+  public long ageSeconds() {
+    try {
+      return header(AGE).map(value -> Long.parseLong(value.trim())).orElse(0L);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * How long the response may still be cached, in milliseconds. Given by max-age in the
+   * Cache-Control header, or else by the Expires header, less the time the response has
+   * already been cached. Empty if the response has neither.
+   */
+  public OptionalLong freshnessMillis() {
+    Optional<String> cacheControl = header(CACHE_CONTROL);
+    if (cacheControl.isPresent()) {
+      for (String directive : cacheControl.get().split(",")) {
+        String normalized = directive.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals("no-cache") || normalized.equals("no-store")) {
+          return OptionalLong.of(0);
+        }
+        if (normalized.startsWith(MAX_AGE)) {
+          try {
+            long maxAge = Long.parseLong(normalized.substring(MAX_AGE.length()));
+            return OptionalLong.of(Math.max(0, (maxAge - ageSeconds()) * 1000));
+          } catch (NumberFormatException e) {
+            return OptionalLong.of(0);
+          }
+        }
+      }
+    }
+
+    if (header(EXPIRES).isEmpty()) {
+      return OptionalLong.empty();
+    }
+    // an invalid date, e.g. 0, means the response has already expired
+    return dateHeader(EXPIRES)
+      .map(expires -> {
+        // compare with the Date of the response, so the clock skew of the host
+        // doesn't matter
+        long lifetime =
+          expires.toEpochMilli() -
+          dateHeader(DATE).map(Instant::toEpochMilli).orElse(System.currentTimeMillis());
+        return OptionalLong.of(Math.max(0, lifetime - ageSeconds() * 1000));
+      })
+      .orElse(OptionalLong.of(0));
+  }
+
+  /**
+   * The time to wait before making another request, in milliseconds, from the
+   * Retry-After header. Empty if the response doesn't have a valid Retry-After header.
+   */
+  public OptionalLong retryAfterMillis() {
+    Optional<String> retryAfter = header(RETRY_AFTER);
+    if (retryAfter.isEmpty()) {
+      return OptionalLong.empty();
+    }
+    try {
+      return OptionalLong.of(Math.max(0, Long.parseLong(retryAfter.get().trim()) * 1000));
+    } catch (NumberFormatException e) {
+      // not a number of seconds, so it should be a date
+    }
+    return dateHeader(RETRY_AFTER)
+      .map(date -> {
+        long delay =
+          date.toEpochMilli() -
+          dateHeader(DATE).map(Instant::toEpochMilli).orElse(System.currentTimeMillis());
+        return OptionalLong.of(Math.max(0, delay));
+      })
+      .orElse(OptionalLong.empty());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (body != null) {
+      body.close();
+    }
+  }
+}
@@ -1,16 +1,26 @@
 package org.entur.gbfs.http;
 
+import com.fasterxml.jackson.core.StreamReadFeature;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 import org.entur.gbfs.authentication.RequestAuthenticator;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -20,6 +30,11 @@ public class GBFSFeedUpdater<T> {
 
   private static final Logger LOG = LoggerFactory.getLogger(GBFSFeedUpdater.class);
   public static final String GET_LAST_UPDATED = "getLastUpdated";
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String DATE = "Date";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
 
   /**
    * URL for the individual GBFS file
@@ -31,24 +46,77 @@ public class GBFSFeedUpdater<T> {
    */
   private final Class<T> implementingClass;
 
+  /**
+   * Reads last_updated and ttl from the deserialized data
+   */
+  private final FeedMetadataAccessor metadataAccessor;
+
   private final RequestAuthenticator requestAuthenticator;
 
-  private T data;
-  private byte[] rawData = null;
+  private volatile T data;
+  private volatile byte[] rawData = null;
+
+  /**
+   * Validators from the last successful response, used for conditional requests
+   */
+  private String etag;
+  private String lastModified;
+
+  /**
+   * Hash of the body the current data was deserialized from, used to detect servers
+   * returning the same file again without support for conditional requests
+   */
+  private Long contentHash;
+
+  private TransferStatistics transferStatistics = TransferStatistics.EMPTY;
+
+  /**
+   * Status code and Retry-After of the last response, used to choose the backoff if the
+   * request failed. The status code is null if there was no response.
+   */
+  private volatile Integer lastStatusCode;
+  private Long retryAfterMillis;
+
+  /**
+   * Set if the request was not made because the circuit of the host is open, or it
+   * exceeded its deadline while waiting for its turn
+   */
+  private Long postponeInMillis;
 
   private final UpdateStrategy updateStrategy;
 
   private final GBFSHttpClient httpClient;
 
-  private Map<String, String> httpHeaders = new HashMap<>();
+  /**
+   * The configured headers, copied as they may be shared with other updaters. Requests
+   * are authenticated on a copy of these, so they are never modified.
+   */
+  private final Map<String, String> httpHeaders;
 
   private static final ObjectMapper objectMapper = new ObjectMapper();
 
-  static {
-    objectMapper.configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL, true);
-  }
+  /**
+   * Readers for the default object mapper, shared by all updaters of the same class
+   */
+  private static final ClassValue<ObjectReader> defaultReaders = new ClassValue<>() {
+    @Override
+    protected ObjectReader computeValue(Class<?> type) {
+      return createReader(objectMapper, type);
+    }
+  };
+
+  /**
+   * Reader for the implementing class, which has its root deserializer resolved
+   */
+  private final ObjectReader objectReader;
+
+  private final Timeouts timeouts;
+
+  private final RequestHedging requestHedging;
 
-  private final Long timeout;
+  private final boolean retainRawData;
+
+  private final Executor responseExecutor;
 
   public GBFSFeedUpdater(
     @NotNull URI url,
@@ -63,7 +131,25 @@ public class GBFSFeedUpdater<T> {
       implementingClass,
       httpHeaders,
       timeout,
-      new GBFSHttpClient(),
+      GBFSHttpClient.getDefault()
+    );
+  }
+
+  public GBFSFeedUpdater(
+    @NotNull URI url,
+    @NotNull RequestAuthenticator requestAuthenticator,
+    @NotNull Class<T> implementingClass,
+    Map<String, String> httpHeaders,
+    Long timeout,
+    @NotNull GBFSHttpClient httpClient
+  ) {
+    this(
+      url,
+      requestAuthenticator,
+      implementingClass,
+      httpHeaders,
+      timeout,
+      httpClient,
       new UpdateStrategy()
     );
   }
@@ -76,16 +162,65 @@ public class GBFSFeedUpdater<T> {
     Long timeout,
     @NotNull GBFSHttpClient httpClient,
     @NotNull UpdateStrategy updateStrategy
+  ) {
+    this(
+      url,
+      requestAuthenticator,
+      implementingClass,
+      httpHeaders,
+      timeout,
+      httpClient,
+      updateStrategy,
+      FeedUpdaterOptions.DEFAULT
+    );
+  }
+
+  /**
+   * @param options Options of the updater beyond the basic ones, see
+   *                {@link FeedUpdaterOptions}
+   */
+  public GBFSFeedUpdater(
+    @NotNull URI url,
+    @NotNull RequestAuthenticator requestAuthenticator,
+    @NotNull Class<T> implementingClass,
+    Map<String, String> httpHeaders,
+    Long timeout,
+    @NotNull GBFSHttpClient httpClient,
+    @NotNull UpdateStrategy updateStrategy,
+    @NotNull FeedUpdaterOptions options
   ) {
     this.url = url;
     this.requestAuthenticator = requestAuthenticator;
     this.implementingClass = implementingClass;
-    if (httpHeaders != null) {
-      this.httpHeaders = httpHeaders;
-    }
-    this.timeout = timeout;
+    this.metadataAccessor = FeedMetadataAccessor.forClass(implementingClass);
+    this.httpHeaders =
+      httpHeaders == null ? new HashMap<>() : new HashMap<>(httpHeaders);
+    this.timeouts =
+      options.timeouts() == null
+        ? Timeouts.ofReadTimeout(timeout)
+        : options.timeouts().withDefaultReadTimeout(timeout);
+    this.requestHedging = options.requestHedging();
     this.httpClient = httpClient;
     this.updateStrategy = updateStrategy;
+    this.retainRawData = !Boolean.FALSE.equals(options.retainRawData());
+    this.objectReader =
+      options.objectMapper() == null
+        ? defaultReaders.get(implementingClass)
+        : createReader(options.objectMapper(), implementingClass);
+    this.responseExecutor =
+      Objects.requireNonNullElseGet(options.responseExecutor(), ForkJoinPool::commonPool);
+  }
+
+  /**
+   * Unknown enum values are read as null, so a single unknown value doesn't make the
+   * whole file unreadable. Streams are closed by the updater, after the rest of the
+   * body has been hashed.
+   */
+  private static ObjectReader createReader(ObjectMapper objectMapper, Class<?> type) {
+    return objectMapper
+      .readerFor(type)
+      .with(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL)
+      .without(StreamReadFeature.AUTO_CLOSE_SOURCE);
   }
 
   public URI getUrl() {
@@ -100,10 +235,58 @@ public class GBFSFeedUpdater<T> {
     return Optional.ofNullable(rawData);
   }
 
-  public boolean fetchOnce() {
-    requestAuthenticator.authenticateRequest(httpHeaders);
+  /**
+   * Get the time left until the file is due for an update, or 0 if it is already due
+   */
+  public long getMillisUntilNextUpdate() {
+    return updateStrategy.getMillisUntilNextUpdate();
+  }
 
-    rawData = fetchFeed(url, httpHeaders).orElse(null);
+  /**
+   * Get the number of failed attempts to update the file since it was last updated
+   */
+  public int getFailedAttemptsCount() {
+    return updateStrategy.getFailedAttemptsCount();
+  }
+
+  /**
+   * Get the state of the circuit of the host of the file
+   */
+  public CircuitBreaker.State getCircuitState() {
+    return httpClient.getCircuitState(url);
+  }
+
+  /**
+   * Get the status code of the last response, or null if no response was received
+   */
+  public Integer getLastStatusCode() {
+    return lastStatusCode;
+  }
+
+  /**
+   * Get the time waited before retrying after the last failure, in milliseconds
+   */
+  public long getLastBackoffMillis() {
+    return updateStrategy.getLastBackoffMillis();
+  }
+
+  /**
+   * Get the number of milliseconds the clock of the host is ahead of ours, as used to
+   * schedule the next update
+   */
+  public long getClockSkewMillis() {
+    return updateStrategy.getClockSkewMillis();
+  }
+
+  /**
+   * Get the number of bytes received and decoded for this file
+   */
+  public TransferStatistics getTransferStatistics() {
+    return transferStatistics;
+  }
+
+  public boolean fetchOnce() {
+    rawData = readBody(fetchFeed(url, getAuthenticatedHeaders())).orElse(null);
 
     if (!validateRawData(rawData)) {
       return false;
@@ -112,44 +295,214 @@ public class GBFSFeedUpdater<T> {
     return deserializeData(rawData);
   }
 
+  /**
+   * Fetch the file if it is due for an update. Returns true if new data was loaded,
+   * and false if the file was not due, has not changed since the last update, or
+   * could not be loaded.
+   */
   public boolean update() {
-    if (!shouldUpdate()) {
+    if (!shouldUpdate() || skipWhileCircuitOpen()) {
       return false;
     }
 
-    requestAuthenticator.authenticateRequest(httpHeaders);
-    var fetchedData = fetchFeed(url, httpHeaders).orElse(null);
+    updateStrategy.recordFetch();
+    return handleResponse(fetchFeed(url, getRequestHeaders()));
+  }
+
+  /**
+   * Same as {@link #update()}, but doesn't block while waiting for the response if the
+   * http client's transport is non-blocking. A response which is not received right
+   * away is handled on the response executor, as reading its body may block.
+   */
+  public CompletableFuture<Boolean> updateAsync() {
+    if (!shouldUpdate() || skipWhileCircuitOpen()) {
+      return CompletableFuture.completedFuture(false);
+    }
+
+    updateStrategy.recordFetch();
+    CompletableFuture<FetchResult> response = fetchFeedAsync(url, getRequestHeaders());
+    if (response.isDone()) {
+      return response.thenApply(this::handleResponse);
+    }
+    return response.thenApplyAsync(this::handleResponse, responseExecutor);
+  }
+
+  private boolean handleResponse(FetchResult response) {
+    if (response == null && postponeInMillis != null) {
+      updateStrategy.postpone(postponeInMillis);
+      return false;
+    }
+    if (response != null) {
+      updateStrategy.setCacheFreshnessMillis(response.freshnessMillis().orElse(0));
+    }
+
+    if (response != null && response.isNotModified() && data != null) {
+      return handleUnchanged(response);
+    }
+
+    if (!retainRawData && response != null && response.body() != null) {
+      return handleStreamedResponse(response);
+    }
+
+    var fetchedData = readBody(response).orElse(null);
 
     if (fetchedData == null && updateStrategy.getFailedAttemptsCount() < 3) {
-      updateStrategy.rescheduleAfterFailure();
+      rescheduleAfterFailure();
       return false;
     }
 
+    long hash = fetchedData == null ? 0 : contentHash(fetchedData);
+    if (
+      fetchedData != null && data != null && Long.valueOf(hash).equals(contentHash)
+    ) {
+      storeValidators(response);
+      return handleUnchanged(response);
+    }
+
     rawData = fetchedData;
+    contentHash = null;
 
     if (!validateRawData(rawData)) {
-      updateStrategy.rescheduleAfterFailure();
+      clearValidators();
+      rescheduleAfterFailure();
       return false;
     }
 
     if (!deserializeData(rawData)) {
-      updateStrategy.rescheduleAfterFailure();
+      clearValidators();
+      rescheduleAfterFailure();
       return false;
     }
 
     if (!scheduleNextUpdate()) {
-      updateStrategy.rescheduleAfterFailure();
+      rescheduleAfterFailure();
+      return false;
+    }
+
+    contentHash = hash;
+    storeValidators(response);
+    return true;
+  }
+
+  /**
+   * The body is hashed while it is deserialized, so an unchanged file is still parsed,
+   * but the previous data is kept.
+   */
+  private boolean handleStreamedResponse(FetchResult response) {
+    rawData = null;
+    T previousData = data;
+    Long previousHash = contentHash;
+    contentHash = null;
+
+    if (!deserializeData(response)) {
+      clearValidators();
+      rescheduleAfterFailure();
+      return false;
+    }
+
+    if (previousData != null && contentHash.equals(previousHash)) {
+      data = previousData;
+      storeValidators(response);
+      return handleUnchanged(response);
+    }
+
+    if (!scheduleNextUpdate()) {
+      rescheduleAfterFailure();
       return false;
     }
 
+    storeValidators(response);
     return true;
   }
 
+  /**
+   * Skip the update without making a request while the circuit of the host is open
+   */
+  private boolean skipWhileCircuitOpen() {
+    long retryInMillis = httpClient.getMillisUntilRetry(url);
+    if (retryInMillis > 0) {
+      updateStrategy.postpone(retryInMillis);
+      return true;
+    }
+    return false;
+  }
+
+  private void rescheduleAfterFailure() {
+    updateStrategy.rescheduleAfterFailure(lastStatusCode, retryAfterMillis);
+  }
+
   private boolean shouldUpdate() {
     return updateStrategy.shouldUpdate();
   }
 
-  private Optional<byte[]> fetchFeed(URI uri, Map<String, String> httpHeaders) {
+  /**
+   * Get the headers of a request, authenticated by the request authenticator. Each
+   * request gets its own map, as the transport may still be reading the headers of a
+   * previous one.
+   */
+  private Map<String, String> getAuthenticatedHeaders() {
+    Map<String, String> requestHeaders = new HashMap<>(httpHeaders);
+    requestAuthenticator.authenticateRequest(requestHeaders);
+    return requestHeaders;
+  }
+
+  /**
+   * Get the authenticated headers, with conditional request headers if we have data
+   * from a previous response to compare with
+   */
+  private Map<String, String> getRequestHeaders() {
+    Map<String, String> requestHeaders = getAuthenticatedHeaders();
+    if (data == null) {
+      return requestHeaders;
+    }
+    if (etag != null) {
+      requestHeaders.put(IF_NONE_MATCH, etag);
+    }
+    if (lastModified != null) {
+      requestHeaders.put(IF_MODIFIED_SINCE, lastModified);
+    }
+    return requestHeaders;
+  }
+
+  private void storeValidators(FetchResult response) {
+    etag = response.header(ETAG).orElse(null);
+    lastModified = response.header(LAST_MODIFIED).orElse(null);
+  }
+
+  private void clearValidators() {
+    etag = null;
+    lastModified = null;
+  }
+
+  /**
+   * The file has not changed since the last response, so the previous data is kept.
+   * Since last_updated of the previous data is what made it due for an update, the next
+   * update is scheduled from the time of the response instead.
+   */
+  private boolean handleUnchanged(FetchResult response) {
+    LOG.debug("GBFS feed {} not modified", url);
+    updateClockSkew();
+    int responseTime = response
+      .dateHeader(DATE)
+      .map(date -> Math.toIntExact(date.getEpochSecond()))
+      .orElseGet(updateStrategy::getHostTimeSeconds);
+
+    try {
+      updateStrategy.scheduleNextUpdateUnchanged(
+        responseTime,
+        metadataAccessor.getTtl(data)
+      );
+    } catch (IllegalStateException e) {
+      LOG.warn("Invalid data for {}", url);
+      rescheduleAfterFailure();
+    }
+    return false;
+  }
+
+  private FetchResult fetchFeed(URI uri, Map<String, String> httpHeaders) {
+    lastStatusCode = null;
+    retryAfterMillis = null;
+    postponeInMillis = null;
     String proto = uri.getScheme();
 
     if (proto.equals("http") || proto.equals("https")) {
@@ -159,32 +512,118 @@ public class GBFSFeedUpdater<T> {
     }
   }
 
-  private Optional<byte[]> fetchFeedFromFile(URI uri) {
-    try (InputStream is = uri.toURL().openStream()) {
-      return Optional.of(is.readAllBytes());
+  private CompletableFuture<FetchResult> fetchFeedAsync(
+    URI uri,
+    Map<String, String> httpHeaders
+  ) {
+    lastStatusCode = null;
+    retryAfterMillis = null;
+    postponeInMillis = null;
+    String proto = uri.getScheme();
+
+    if (proto.equals("http") || proto.equals("https")) {
+      CompletableFuture<FetchResult> request = requestHedging == null
+        ? httpClient.fetchAsync(uri, timeouts, httpHeaders)
+        : httpClient.fetchHedgedAsync(uri, timeouts, httpHeaders, requestHedging);
+      return request.handle((response, e) -> {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        if (cause instanceof CircuitOpenException circuitOpenException) {
+          return handleNotMade(uri, circuitOpenException.getRetryInMillis(), cause);
+        }
+        if (cause instanceof ThrottledException throttledException) {
+          return handleNotMade(uri, throttledException.getRetryInMillis(), cause);
+        }
+        if (e != null) {
+          LOG.warn("Error (bad connection) reading GBFS feed from {}", uri, e);
+          return null;
+        }
+        return checkResponse(uri, response);
+      });
+    } else {
+      return CompletableFuture.completedFuture(fetchFeedFromFile(uri));
+    }
+  }
+
+  private FetchResult fetchFeedFromFile(URI uri) {
+    try {
+      return new FetchResult(FetchResult.HTTP_OK, null, uri.toURL().openStream());
     } catch (MalformedURLException e) {
       LOG.warn("Error reading GBFS feed from file due to malformed URL {}", uri, e);
-      return Optional.empty();
+      return null;
     } catch (IOException e) {
       LOG.warn("Error reading GBFS feed from file {}", uri, e);
-      return Optional.empty();
+      return null;
     }
   }
 
-  private Optional<byte[]> fetchFeedFromHttp(URI uri, Map<String, String> httpHeaders) {
-    try (InputStream is = httpClient.getData(uri, timeout, httpHeaders)) {
-      if (is == null) {
-        LOG.warn("Failed to get data from url {}", uri);
-        return Optional.empty();
-      }
-
-      return Optional.of(is.readAllBytes());
+  private FetchResult fetchFeedFromHttp(URI uri, Map<String, String> httpHeaders) {
+    try {
+      return checkResponse(
+        uri,
+        requestHedging == null
+          ? httpClient.fetch(uri, timeouts, httpHeaders)
+          : httpClient.fetchHedged(uri, timeouts, httpHeaders, requestHedging)
+      );
+    } catch (CircuitOpenException e) {
+      return handleNotMade(uri, e.getRetryInMillis(), e);
+    } catch (ThrottledException e) {
+      return handleNotMade(uri, e.getRetryInMillis(), e);
     } catch (IOException e) {
       LOG.warn("Error (bad connection) reading GBFS feed from {}", uri, e);
+      return null;
+    }
+  }
+
+  /**
+   * The request was not made, so it is postponed rather than counted as a failure
+   */
+  private FetchResult handleNotMade(URI uri, long retryInMillis, Throwable e) {
+    LOG.debug("Skipped GBFS feed {}: {}", uri, e.getMessage());
+    postponeInMillis = retryInMillis;
+    return null;
+  }
+
+  private FetchResult checkResponse(URI uri, FetchResult response) {
+    if (response != null) {
+      lastStatusCode = response.statusCode();
+      OptionalLong retryAfter = response.retryAfterMillis();
+      retryAfterMillis = retryAfter.isPresent() ? retryAfter.getAsLong() : null;
+    }
+    if (response == null || !(response.isOk() || response.isNotModified())) {
+      LOG.warn(
+        "Failed to get data from url {}, status code {}",
+        uri,
+        response == null ? null : response.statusCode()
+      );
+      return null;
+    }
+    return response;
+  }
+
+  private Optional<byte[]> readBody(FetchResult response) {
+    if (response == null || response.body() == null) {
+      return Optional.empty();
+    }
+
+    try (response) {
+      byte[] body = response.body().readAllBytes();
+      recordTransfer(response, body.length);
+      return Optional.of(body);
+    } catch (IOException e) {
+      LOG.warn("Error (bad connection) reading GBFS feed from {}", url, e);
       return Optional.empty();
     }
   }
 
+  private void recordTransfer(FetchResult response, long decodedBytes) {
+    long receivedBytes = response.receivedBytes();
+    transferStatistics =
+      transferStatistics.add(
+        receivedBytes < 0 ? decodedBytes : receivedBytes,
+        decodedBytes
+      );
+  }
+
   private boolean validateRawData(byte[] rawData) {
     if (rawData == null) {
       LOG.warn("Invalid data for {}", url);
@@ -197,7 +636,27 @@ public class GBFSFeedUpdater<T> {
 
   private boolean deserializeData(byte[] rawData) {
     try {
-      data = objectMapper.readValue(rawData, implementingClass);
+      data = objectReader.readValue(rawData);
+    } catch (IOException e) {
+      LOG.warn("Error unmarshalling feed", e);
+      data = null;
+    }
+    return data != null;
+  }
+
+  private boolean deserializeData(FetchResult response) {
+    Checksum checksum = new CRC32C();
+    try (
+      response;
+      CountingInputStream decoded = new CountingInputStream(
+        new CheckedInputStream(response.body(), checksum)
+      )
+    ) {
+      data = objectReader.readValue(decoded);
+      // the parser may stop before the end of the body, e.g. at trailing whitespace
+      decoded.transferTo(OutputStream.nullOutputStream());
+      recordTransfer(response, decoded.getCount());
+      contentHash = contentHash(checksum, decoded.getCount());
     } catch (IOException e) {
       LOG.warn("Error unmarshalling feed", e);
       data = null;
@@ -205,38 +664,33 @@ public class GBFSFeedUpdater<T> {
     return data != null;
   }
 
+  private void updateClockSkew() {
+    httpClient.getClockSkewMillis(url).ifPresent(updateStrategy::setClockSkewMillis);
+  }
+
+  private static long contentHash(byte[] body) {
+    Checksum checksum = new CRC32C();
+    checksum.update(body, 0, body.length);
+    return contentHash(checksum, body.length);
+  }
+
+  /**
+   * A CRC32C checksum is fast to compute, and is combined with the length of the body to
+   * make collisions between different versions of a file even less likely
+   */
+  private static long contentHash(Checksum checksum, long length) {
+    return (length << 32) | checksum.getValue();
+  }
+
   private boolean scheduleNextUpdate() {
+    updateClockSkew();
     try {
-      // Fetch lastUpdated and ttl from the resulting class. Due to type erasure we don't know the actual
-      // class, and have to use introspection to get the method references, as they do not share a supertype.
-
-      Integer lastUpdated;
-
-      if (
-        implementingClass
-          .getMethod(GET_LAST_UPDATED)
-          .getReturnType()
-          .equals(Integer.class)
-      ) {
-        lastUpdated =
-          (Integer) implementingClass.getMethod(GET_LAST_UPDATED).invoke(data);
-      } else {
-        Date lastUpdatedDate = (Date) implementingClass
-          .getMethod(GET_LAST_UPDATED)
-          .invoke(data);
-        lastUpdated = Math.toIntExact(lastUpdatedDate.getTime() / 1000);
-      }
-
-      Integer ttl = (Integer) implementingClass.getMethod("getTtl").invoke(data);
-      updateStrategy.scheduleNextUpdate(lastUpdated, ttl);
+      updateStrategy.scheduleNextUpdate(
+        metadataAccessor.getLastUpdated(data),
+        metadataAccessor.getTtl(data)
+      );
       return true;
-    } catch (
-      NoSuchMethodException
-      | InvocationTargetException
-      | IllegalAccessException
-      | ClassCastException
-      | NullPointerException e
-    ) {
+    } catch (IllegalStateException | ArithmeticException | NullPointerException e) {
       LOG.warn("Invalid data for {}", url);
       return false;
     }
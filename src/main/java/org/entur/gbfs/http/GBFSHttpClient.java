@@ -1,25 +1,126 @@
 package org.entur.gbfs.http;
 
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.util.Map;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.CookieSpecs;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.config.SocketConfig;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class GBFSHttpClient {
+/**
+ * Http client for fetching GBFS files. The requests are made by a {@link GBFSHttpTransport},
+ * which by default is a blocking {@link ApacheHttpTransport} with pooled connections.
+ * An instance should be shared between all feed updaters, and closed when it is no
+ * longer needed.
+ * <p>
+ * Responses compressed with gzip or deflate are decompressed while they are read.
+ * </p>
+ * <p>
+ * The clock skew of each host is estimated from the Date header of its responses.
+ * Requests to each host may be limited by a {@link HostRateLimiter}, and stopped by a
+ * {@link CircuitBreaker} while the host is down.
+ * </p>
+ * <p>
+ * Requests may be hedged by a {@link RequestHedging}, to cut the tail latency of slow
+ * hosts.
+ * </p>
+ */
+public class GBFSHttpClient implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(GBFSHttpClient.class);
-  private static final long TIMEOUT_CONNECTION = 5000;
+
+  private final GBFSHttpTransport transport;
+
+  private final HostRateLimiter rateLimiter;
+
+  private final CircuitBreaker circuitBreaker;
+
+  private final ClockSkewEstimator clockSkewEstimator = new ClockSkewEstimator();
+
+  public GBFSHttpClient() {
+    this(new ApacheHttpTransport());
+  }
+
+  /**
+   * Create a new http client with its own connection pool
+   *
+   * @param maxConnectionsTotal The maximum number of pooled connections
+   * @param maxConnectionsPerRoute The maximum number of pooled connections per host
+   * @param keepAliveMillis How long an idle connection may be reused, if the server
+   *                        doesn't say otherwise
+   * @param maxIdleMillis Idle connections older than this are evicted from the pool
+   */
+  public GBFSHttpClient(
+    int maxConnectionsTotal,
+    int maxConnectionsPerRoute,
+    long keepAliveMillis,
+    long maxIdleMillis
+  ) {
+    this(
+      new ApacheHttpTransport(
+        maxConnectionsTotal,
+        maxConnectionsPerRoute,
+        keepAliveMillis,
+        maxIdleMillis
+      )
+    );
+  }
+
+  /**
+   * Create a new http client using the given transport
+   */
+  public GBFSHttpClient(GBFSHttpTransport transport) {
+    this(transport, null);
+  }
+
+  /**
+   * Create a new http client using the given transport, which limits the requests to
+   * each host. Requests over the limits wait for their turn.
+   *
+   * @param rateLimiter The limits of each host, or null to not limit requests
+   */
+  public GBFSHttpClient(GBFSHttpTransport transport, HostRateLimiter rateLimiter) {
+    this(transport, rateLimiter, null);
+  }
+
+  /**
+   * Create a new http client using the given transport, which limits the requests to
+   * each host, and stops making requests to hosts which are down. Requests to a host
+   * whose circuit is open fail with a {@link CircuitOpenException}.
+   *
+   * @param rateLimiter The limits of each host, or null to not limit requests
+   * @param circuitBreaker The circuit breaker, or null to always make requests
+   */
+  public GBFSHttpClient(
+    GBFSHttpTransport transport,
+    HostRateLimiter rateLimiter,
+    CircuitBreaker circuitBreaker
+  ) {
+    this.transport = transport;
+    this.rateLimiter = rateLimiter;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Get a client shared by all loaders which are not given a client explicitly
+   */
+  public static GBFSHttpClient getDefault() {
+    return DefaultHolder.INSTANCE;
+  }
 
   public InputStream getData(URI uri) throws IOException {
     return getData(uri, null);
@@ -34,42 +135,587 @@ public class GBFSHttpClient {
     Long timeout,
     Map<String, String> requestHeaderValues
   ) throws IOException {
-    HttpGet httpget = new HttpGet(uri);
-    if (requestHeaderValues != null) {
-      for (Map.Entry<String, String> entry : requestHeaderValues.entrySet()) {
-        httpget.addHeader(entry.getKey(), entry.getValue());
+    FetchResult result = fetch(uri, timeout, requestHeaderValues);
+    if (!result.isOk()) {
+      LOG.warn("Got non-200 status code: {}", result.statusCode());
+      return null;
+    }
+    return result.body();
+  }
+
+  /**
+   * Fetch a file, and return the response regardless of its status code. The body
+   * of the result is only present for 200 OK responses, and must be closed after use.
+   */
+  public FetchResult fetch(
+    URI uri,
+    Long timeout,
+    Map<String, String> requestHeaderValues
+  ) throws IOException {
+    return fetch(uri, Timeouts.ofReadTimeout(timeout), requestHeaderValues);
+  }
+
+  /**
+   * Fetch a file with separate timeouts, and return the response regardless of its
+   * status code. If the deadline is exceeded, the request is aborted, and reading the
+   * body fails. A request which exceeds it while waiting for its turn is not made, and
+   * fails with a {@link ThrottledException}.
+   *
+   * @see #fetch(URI, Long, Map)
+   */
+  public FetchResult fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues
+  ) throws IOException {
+    return await(uri, fetchBlocking(uri, timeouts, requestHeaderValues, null));
+  }
+
+  /**
+   * Fetch a file, and hedge the request if no response has been received after a
+   * percentile of the recent latencies of the file. The response received first is
+   * returned, and the other request is aborted. With a blocking transport, the hedged
+   * request is made on a separate thread.
+   *
+   * @see #fetch(URI, Timeouts, Map)
+   */
+  public FetchResult fetchHedged(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    RequestHedging hedging
+  ) throws IOException {
+    return await(
+      uri,
+      hedge(
+        uri,
+        hedging,
+        abortSignal -> fetchBlocking(uri, timeouts, requestHeaderValues, abortSignal)
+      )
+    );
+  }
+
+  /**
+   * Same as {@link #fetchHedged(URI, Timeouts, Map, RequestHedging)}, but without
+   * waiting for the response if the transport supports it
+   *
+   * @see #fetchAsync(URI, Timeouts, Map)
+   */
+  public CompletableFuture<FetchResult> fetchHedgedAsync(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    RequestHedging hedging
+  ) {
+    return hedge(
+      uri,
+      hedging,
+      abortSignal -> fetchAsync(uri, timeouts, requestHeaderValues, abortSignal)
+    );
+  }
+
+  private CompletableFuture<FetchResult> fetchBlocking(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CompletableFuture<Void> abortSignal
+  ) {
+    long startNanos = System.nanoTime();
+    CircuitBreaker.Attempt attempt;
+    try {
+      attempt = checkCircuit(uri);
+    } catch (CircuitOpenException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    HostRateLimiter.Permit permit = null;
+    try {
+      // the request is made on this thread, rather than the thread releasing the permit
+      permit = rateLimiter == null ? null : awaitPermit(uri, timeouts.deadline());
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    } finally {
+      if (permit == null && rateLimiter != null) {
+        cancelAttempt(uri, attempt);
       }
     }
-    timeout = (timeout == null) ? TIMEOUT_CONNECTION : timeout;
-    HttpClient httpclient = getClient(timeout);
-    HttpResponse response = httpclient.execute(httpget);
-    if (response.getStatusLine().getStatusCode() != 200) {
-      LOG.warn("Got non-200 status code: {}", response.getStatusLine().getStatusCode());
-      return null;
+    return fetchWithPermit(
+      uri,
+      remaining(timeouts, startNanos),
+      requestHeaderValues,
+      permit,
+      attempt,
+      abortSignal
+    );
+  }
+
+  /**
+   * Fetch a file without waiting for the response, if the transport supports it. The
+   * future completes exceptionally with an IOException if the request fails. If the
+   * request has to wait for its turn, it is made on a separate thread when its turn
+   * comes, as the transport may block while making it.
+   *
+   * @see #fetch(URI, Long, Map)
+   */
+  public CompletableFuture<FetchResult> fetchAsync(
+    URI uri,
+    Long timeout,
+    Map<String, String> requestHeaderValues
+  ) {
+    return fetchAsync(uri, Timeouts.ofReadTimeout(timeout), requestHeaderValues);
+  }
+
+  /**
+   * Fetch a file with separate timeouts, without waiting for the response if the
+   * transport supports it
+   *
+   * @see #fetchAsync(URI, Long, Map)
+   * @see #fetch(URI, Timeouts, Map)
+   */
+  public CompletableFuture<FetchResult> fetchAsync(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues
+  ) {
+    return fetchAsync(uri, timeouts, requestHeaderValues, null);
+  }
+
+  private CompletableFuture<FetchResult> fetchAsync(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CompletableFuture<Void> abortSignal
+  ) {
+    long startNanos = System.nanoTime();
+    CircuitBreaker.Attempt attempt;
+    try {
+      attempt = checkCircuit(uri);
+    } catch (CircuitOpenException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    if (rateLimiter == null) {
+      return fetchWithPermit(
+        uri,
+        timeouts,
+        requestHeaderValues,
+        null,
+        attempt,
+        abortSignal
+      );
+    }
+    return fetchWhenPermitted(
+      uri,
+      timeouts,
+      requestHeaderValues,
+      attempt,
+      abortSignal,
+      startNanos
+    );
+  }
+
+  /**
+   * Make a request when its turn comes. A request which is cancelled or aborted while
+   * waiting for its turn gives it up, and is not made. So does a request which exceeds
+   * its deadline while waiting, which fails with a {@link ThrottledException}.
+   */
+  private CompletableFuture<FetchResult> fetchWhenPermitted(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CircuitBreaker.Attempt attempt,
+    CompletableFuture<Void> abortSignal,
+    long startNanos
+  ) {
+    CompletableFuture<HostRateLimiter.Permit> permit = rateLimiter.acquire(uri);
+    if (timeouts.deadline() != null) {
+      permit.orTimeout(remaining(timeouts, startNanos).deadline(), TimeUnit.MILLISECONDS);
+    }
+    CompletableFuture<FetchResult> result = new CompletableFuture<>();
+    Runnable abandon = () -> {
+      if (permit.cancel(false)) {
+        cancelAttempt(uri, attempt);
+      }
+    };
+    result.whenComplete((response, e) -> abandon.run());
+    if (abortSignal != null) {
+      abortSignal.thenRun(abandon);
+    }
+    BiConsumer<HostRateLimiter.Permit, Throwable> onTurn = (granted, e) -> {
+      if (e != null) {
+        cancelAttempt(uri, attempt);
+        result.completeExceptionally(
+          e instanceof TimeoutException
+            ? new ThrottledException(uri, timeouts.deadline())
+            : new IOException("Gave up waiting to fetch " + uri, e)
+        );
+        return;
+      }
+      if (result.isDone()) {
+        // cancelled after its turn came
+        granted.release();
+        cancelAttempt(uri, attempt);
+        return;
+      }
+      fetchWithPermit(
+        uri,
+        remaining(timeouts, startNanos),
+        requestHeaderValues,
+        granted,
+        attempt,
+        abortSignal
+      )
+        .whenComplete((response, failure) -> {
+          if (failure != null) {
+            result.completeExceptionally(failure);
+          } else if (!result.complete(response)) {
+            closeQuietly(response);
+          }
+        });
+    };
+    if (permit.isDone()) {
+      permit.whenComplete(onTurn);
+    } else {
+      // the turn is given by the thread closing a previous response, or refilling the
+      // tokens of the host, which must not make the request itself
+      permit.whenCompleteAsync(onTurn, ExecutorHolder.EXECUTOR);
+    }
+    return result;
+  }
+
+  private CompletableFuture<FetchResult> fetchWithPermit(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    HostRateLimiter.Permit permit,
+    CircuitBreaker.Attempt attempt,
+    CompletableFuture<Void> abortSignal
+  ) {
+    long requestTime = System.currentTimeMillis();
+    return transport
+      .fetch(uri, timeouts, requestHeaderValues, abortSignal)
+      .thenApply(response -> {
+        clockSkewEstimator.record(
+          uri,
+          requestTime,
+          System.currentTimeMillis(),
+          response
+        );
+        return permit == null ? response : releaseOnClose(response, permit);
+      })
+      .whenComplete((response, e) -> {
+        if (e != null && permit != null) {
+          permit.release();
+        }
+        if (circuitBreaker == null) {
+          return;
+        }
+        if (e != null && abortSignal != null && abortSignal.isDone()) {
+          // an aborted request says nothing about the host
+          cancelAttempt(uri, attempt);
+        } else {
+          circuitBreaker.record(uri, e == null && response.statusCode() < 500);
+        }
+      });
+  }
+
+  /**
+   * Make a request, and a hedged request if it is not answered in time and the budget
+   * of the host allows it. With a blocking transport, the first request is made on the
+   * calling thread, which is released by aborting it if the hedged request wins.
+   *
+   * @param request Makes a request, which is aborted when the given signal completes
+   */
+  private CompletableFuture<FetchResult> hedge(
+    URI uri,
+    RequestHedging hedging,
+    Function<CompletableFuture<Void>, CompletableFuture<FetchResult>> request
+  ) {
+    hedging.recordRequest(uri);
+    OptionalLong hedgeAfterMillis = hedging.getHedgeAfterMillis(uri);
+    long start = System.nanoTime();
+    CompletableFuture<FetchResult> primary;
+    CompletableFuture<FetchResult> result;
+    if (hedgeAfterMillis.isEmpty()) {
+      primary = request.apply(null);
+      result = primary;
+    } else {
+      HedgedRequest hedgedRequest = new HedgedRequest();
+      CompletableFuture
+        .delayedExecutor(
+          hedgeAfterMillis.getAsLong(),
+          TimeUnit.MILLISECONDS,
+          ExecutorHolder.EXECUTOR
+        )
+        .execute(() -> {
+          if (!hedgedRequest.result.isDone() && hedging.tryAcquireHedge(uri)) {
+            hedgedRequest.startHedge(uri, request);
+          }
+        });
+      primary = request.apply(hedgedRequest.primaryAbort);
+      hedgedRequest.race(primary, hedgedRequest.primaryAbort, hedgedRequest.hedgeAbort);
+      result = hedgedRequest.result;
     }
+    // the latency of the first request, also if it failed or lost to the hedged request,
+    // so that the slow requests are not left out of the percentile
+    primary.whenComplete((response, e) -> {
+      if (!(e instanceof CircuitOpenException)) {
+        hedging.recordLatency(
+          uri,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        );
+      }
+    });
+    return result;
+  }
 
-    HttpEntity entity = response.getEntity();
-    if (entity == null) {
+  /**
+   * Check if a request to the host of the URI may be made
+   *
+   * @return The attempt to record the outcome of, or null if the client has no circuit
+   *         breaker
+   */
+  private CircuitBreaker.Attempt checkCircuit(URI uri) throws CircuitOpenException {
+    if (circuitBreaker == null) {
       return null;
     }
-    return entity.getContent();
+    CircuitBreaker.Attempt attempt = circuitBreaker.tryAcquire(uri);
+    if (!attempt.isAllowed()) {
+      throw new CircuitOpenException(uri.getHost(), attempt.getRetryInMillis());
+    }
+    return attempt;
+  }
+
+  private void cancelAttempt(URI uri, CircuitBreaker.Attempt attempt) {
+    if (attempt != null) {
+      circuitBreaker.cancel(uri, attempt);
+    }
+  }
+
+  /**
+   * Get the time until a request to the host of the URI may be made, or 0 if it may be
+   * made now, or if the client has no circuit breaker
+   */
+  public long getMillisUntilRetry(URI uri) {
+    return circuitBreaker == null ? 0 : circuitBreaker.getMillisUntilRetry(uri);
+  }
+
+  /**
+   * Get the state of the circuit of the host of the URI, which is always closed if the
+   * client has no circuit breaker
+   */
+  public CircuitBreaker.State getCircuitState(URI uri) {
+    return circuitBreaker == null || uri.getHost() == null
+      ? CircuitBreaker.State.CLOSED
+      : circuitBreaker.getState(uri.getHost());
+  }
+
+  /**
+   * The request is in progress until its body is closed
+   */
+  private static FetchResult releaseOnClose(
+    FetchResult response,
+    HostRateLimiter.Permit permit
+  ) {
+    if (response.body() == null) {
+      permit.release();
+      return response;
+    }
+    return new FetchResult(
+      response.statusCode(),
+      response.headers(),
+      new FilterInputStream(response.body()) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            permit.release();
+          }
+        }
+      },
+      response.receivedByteCount()
+    );
+  }
+
+  /**
+   * Wait for the turn of a request
+   *
+   * @param deadline How long to wait at most in milliseconds, or null to wait until
+   *                 the turn comes
+   */
+  private HostRateLimiter.Permit awaitPermit(URI uri, Long deadline)
+    throws IOException {
+    CompletableFuture<HostRateLimiter.Permit> permit = rateLimiter.acquire(uri);
+    try {
+      return deadline == null
+        ? permit.get()
+        : permit.get(deadline, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      giveUpTurn(permit);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to fetch " + uri);
+    } catch (TimeoutException e) {
+      giveUpTurn(permit);
+      throw new ThrottledException(uri, deadline);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static void giveUpTurn(CompletableFuture<HostRateLimiter.Permit> permit) {
+    if (!permit.cancel(false)) {
+      // the turn came while giving it up
+      permit.join().release();
+    }
+  }
+
+  /**
+   * Get the timeouts of a request with the time left until its deadline, which also
+   * covers the time it waited for its turn
+   */
+  private static Timeouts remaining(Timeouts timeouts, long startNanos) {
+    if (timeouts.deadline() == null) {
+      return timeouts;
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    return timeouts.withDeadline(Math.max(0, timeouts.deadline() - elapsedMillis));
+  }
+
+  private static FetchResult await(URI uri, CompletableFuture<FetchResult> result)
+    throws IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching " + uri);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      }
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static void closeQuietly(FetchResult response) {
+    try {
+      response.close();
+    } catch (IOException e) {
+      LOG.debug("Error closing aborted response", e);
+    }
+  }
+
+  /**
+   * Get the number of milliseconds the clock of the host of the given URI is ahead of
+   * ours, smoothed over its recent responses. Empty if the host has not sent any Date
+   * header.
+   */
+  public OptionalLong getClockSkewMillis(URI uri) {
+    return clockSkewEstimator.getClockSkewMillis(uri);
   }
 
   public InputStream getData(URI uri, Map<String, String> requestHeaderValues)
     throws IOException {
-    return getData(uri, TIMEOUT_CONNECTION, requestHeaderValues);
+    return getData(uri, null, requestHeaderValues);
   }
 
-  private HttpClient getClient(long timeoutSocket) {
-    return HttpClientBuilder
-      .create()
-      .setRoutePlanner(new SystemDefaultRoutePlanner(null))
-      .setDefaultSocketConfig(
-        SocketConfig.custom().setSoTimeout((int) timeoutSocket).build()
-      )
-      .setDefaultRequestConfig(
-        RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build()
-      )
-      .build();
+  /**
+   * Close the transport. Pending requests will fail.
+   */
+  @Override
+  public void close() throws IOException {
+    transport.close();
+  }
+
+  /**
+   * A request and its hedged request, of which the first response wins. The result
+   * only fails if both fail.
+   */
+  private static final class HedgedRequest {
+
+    private final CompletableFuture<FetchResult> result = new CompletableFuture<>();
+    private final CompletableFuture<Void> primaryAbort = new CompletableFuture<>();
+    private final CompletableFuture<Void> hedgeAbort = new CompletableFuture<>();
+
+    private final Lock lock = new ReentrantLock();
+    private int requestsInProgress = 1;
+    private boolean failed = false;
+    private Throwable firstFailure;
+
+    void startHedge(
+      URI uri,
+      Function<CompletableFuture<Void>, CompletableFuture<FetchResult>> request
+    ) {
+      lock.lock();
+      try {
+        if (failed || result.isDone()) {
+          return;
+        }
+        requestsInProgress++;
+      } finally {
+        lock.unlock();
+      }
+      LOG.debug("Hedging request to {}", uri);
+      race(request.apply(hedgeAbort), hedgeAbort, primaryAbort);
+    }
+
+    void race(
+      CompletableFuture<FetchResult> response,
+      CompletableFuture<Void> abort,
+      CompletableFuture<Void> otherAbort
+    ) {
+      response.whenComplete((fetchResult, e) -> {
+        if (e == null) {
+          if (result.complete(fetchResult)) {
+            otherAbort.complete(null);
+          } else {
+            // lost the race, so the rest of the response is not read
+            abort.complete(null);
+            closeQuietly(fetchResult);
+          }
+          return;
+        }
+        Throwable failure = null;
+        lock.lock();
+        try {
+          requestsInProgress--;
+          if (firstFailure == null) {
+            firstFailure = e;
+          }
+          if (requestsInProgress == 0) {
+            failed = true;
+            failure = firstFailure;
+          }
+        } finally {
+          lock.unlock();
+        }
+        if (failure != null) {
+          result.completeExceptionally(failure);
+        }
+      });
+    }
+
+  }
+
+  private static class ExecutorHolder {
+
+    /**
+     * Makes the hedged requests and the requests which waited for their turn, which
+     * block a thread with a blocking transport. Their number is limited by the hedging
+     * budget and the limits of each host.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+      runnable -> {
+        Thread thread = new Thread(runnable, "gbfs-request");
+        thread.setDaemon(true);
+        return thread;
+      }
+    );
+  }
+
+  private static class DefaultHolder {
+
+    private static final GBFSHttpClient INSTANCE = new GBFSHttpClient();
   }
 }
@@ -0,0 +1,79 @@
+package org.entur.gbfs.http;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The transport used by {@link GBFSHttpClient} to make http requests.
+ *
+ * Implementations provided:
+ * @see ApacheHttpTransport A blocking transport with a pool of connections, used by default
+ * @see JavaHttpClientTransport A non-blocking transport, which doesn't hold a thread
+ *                              while waiting for the response
+ *
+ * Implementations must decode compressed responses, and should count the bytes
+ * received for the body.
+ */
+public interface GBFSHttpTransport extends Closeable {
+  /**
+   * Fetch a file. The returned future completes with the response regardless of its
+   * status code, or exceptionally with an IOException if the request could not be made.
+   *
+   * @param uri The URI of the file
+   * @param timeout Timeout in milliseconds
+   * @param requestHeaderValues Http headers to add to the request
+   */
+  CompletableFuture<FetchResult> fetch(
+    URI uri,
+    long timeout,
+    Map<String, String> requestHeaderValues
+  );
+
+  /**
+   * Fetch a file with separate timeouts. Transports should abort the request when the
+   * deadline is exceeded. This default implementation only uses the read timeout, and
+   * fails the returned future when the deadline is exceeded, without aborting the
+   * request.
+   *
+   * @param uri The URI of the file
+   * @param timeouts The timeouts of the request
+   * @param requestHeaderValues Http headers to add to the request
+   */
+  default CompletableFuture<FetchResult> fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues
+  ) {
+    CompletableFuture<FetchResult> result = fetch(
+      uri,
+      timeouts.readTimeoutOrDefault(),
+      requestHeaderValues
+    );
+    return timeouts.deadline() == null
+      ? result
+      : result.orTimeout(timeouts.deadline(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Fetch a file, which may be aborted. Transports should abort the request when the
+   * abort signal completes, and fail the returned future if it has not completed yet.
+   * This default implementation ignores the signal, so the request runs until it is
+   * done.
+   *
+   * @param uri The URI of the file
+   * @param timeouts The timeouts of the request
+   * @param requestHeaderValues Http headers to add to the request
+   * @param abortSignal Completes when the request should be aborted
+   */
+  default CompletableFuture<FetchResult> fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CompletableFuture<?> abortSignal
+  ) {
+    return fetch(uri, timeouts, requestHeaderValues);
+  }
+}
@@ -0,0 +1,253 @@
+package org.entur.gbfs.http;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits the requests made to each host, for operators which host many systems behind
+ * the same host and rate limit their clients. Requests over the limits wait for their
+ * turn in the order they were made, without holding a thread if the request is made
+ * asynchronously.
+ * <p>
+ * The rate is limited by a token bucket, which holds up to one second of requests, so
+ * that short bursts are allowed.
+ * </p>
+ */
+public class HostRateLimiter {
+
+  /**
+   * @param maxConcurrentRequests The maximum number of requests in progress at the same
+   *                              time, or null for no limit. A request is in progress
+   *                              until its body is closed
+   * @param requestsPerSecond The maximum number of requests started per second, or null
+   *                          for no limit
+   */
+  public record Limits(
+    @Nullable Integer maxConcurrentRequests,
+    @Nullable Double requestsPerSecond
+  ) {
+    public static final Limits UNLIMITED = new Limits(null, null);
+
+    public Limits {
+      if (maxConcurrentRequests != null && maxConcurrentRequests < 1) {
+        throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+      }
+      if (requestsPerSecond != null && requestsPerSecond <= 0) {
+        throw new IllegalArgumentException("requestsPerSecond must be positive");
+      }
+    }
+  }
+
+  private final Limits defaultLimits;
+  private final Map<String, Limits> hostLimits;
+  private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+  /**
+   * @param defaultLimits Limits of hosts which have no limits of their own
+   * @param hostLimits Limits by host name
+   */
+  public HostRateLimiter(Limits defaultLimits, @Nullable Map<String, Limits> hostLimits) {
+    this.defaultLimits = defaultLimits;
+    this.hostLimits = hostLimits == null ? Map.of() : Map.copyOf(hostLimits);
+  }
+
+  /**
+   * Wait for the turn of a request. The returned future completes when the request may
+   * be made, and the permit must then be released when the request is done. If the
+   * future is cancelled before it completes, the request gives up its turn.
+   */
+  CompletableFuture<Permit> acquire(URI uri) {
+    String hostName = uri.getHost() == null ? "" : uri.getHost();
+    return hosts
+      .computeIfAbsent(
+        hostName,
+        name -> new Host(hostLimits.getOrDefault(name, defaultLimits))
+      )
+      .acquire();
+  }
+
+  /**
+   * Get the number of requests to the host in progress
+   */
+  public int getActiveRequests(String hostName) {
+    Host host = hosts.get(hostName);
+    return host == null ? 0 : host.getActiveRequests();
+  }
+
+  /**
+   * Get the number of requests to the host waiting for their turn
+   */
+  public int getWaitingRequests(String hostName) {
+    Host host = hosts.get(hostName);
+    return host == null ? 0 : host.getWaitingRequests();
+  }
+
+  /**
+   * The right to make a request, which must be released when the request is done.
+   * Releasing it more than once has no effect.
+   */
+  static final class Permit {
+
+    private final Host host;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(Host host) {
+      this.host = host;
+    }
+
+    void release() {
+      if (released.compareAndSet(false, true)) {
+        host.release();
+      }
+    }
+  }
+
+  private static final class Host {
+
+    private final Limits limits;
+
+    private final Lock lock = new ReentrantLock();
+    private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+    private int activeRequests = 0;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private boolean refillScheduled = false;
+
+    private Host(Limits limits) {
+      this.limits = limits;
+      this.tokens = bucketSize();
+    }
+
+    CompletableFuture<Permit> acquire() {
+      CompletableFuture<Permit> permit = new CompletableFuture<>();
+      lock.lock();
+      try {
+        waiting.add(permit);
+      } finally {
+        lock.unlock();
+      }
+      dispatch();
+      return permit;
+    }
+
+    void release() {
+      lock.lock();
+      try {
+        activeRequests--;
+      } finally {
+        lock.unlock();
+      }
+      dispatch();
+    }
+
+    int getActiveRequests() {
+      lock.lock();
+      try {
+        return activeRequests;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    int getWaitingRequests() {
+      lock.lock();
+      try {
+        return waiting.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Give permits to the waiting requests which are within the limits. The permits are
+     * completed outside the lock, as completing them runs their dependent actions.
+     */
+    private void dispatch() {
+      List<CompletableFuture<Permit>> granted = new ArrayList<>();
+      lock.lock();
+      try {
+        refill();
+        while (!waiting.isEmpty() && hasCapacity()) {
+          CompletableFuture<Permit> next = waiting.poll();
+          if (!next.isDone()) {
+            activeRequests++;
+            if (limits.requestsPerSecond() != null) {
+              tokens--;
+            }
+            granted.add(next);
+          }
+        }
+        if (
+          !waiting.isEmpty() &&
+          !refillScheduled &&
+          limits.requestsPerSecond() != null &&
+          tokens < 1
+        ) {
+          refillScheduled = true;
+          long delayNanos = (long) ((1 - tokens) / limits.requestsPerSecond() * 1e9);
+          CompletableFuture.runAsync(
+            this::dispatchAfterRefill,
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS)
+          );
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      for (CompletableFuture<Permit> permit : granted) {
+        if (!permit.complete(new Permit(this))) {
+          // cancelled while it was granted
+          release();
+        }
+      }
+    }
+
+    private void dispatchAfterRefill() {
+      lock.lock();
+      try {
+        refillScheduled = false;
+      } finally {
+        lock.unlock();
+      }
+      dispatch();
+    }
+
+    private boolean hasCapacity() {
+      return (
+        (limits.maxConcurrentRequests() == null ||
+          activeRequests < limits.maxConcurrentRequests()) &&
+        (limits.requestsPerSecond() == null || tokens >= 1)
+      );
+    }
+
+    private void refill() {
+      if (limits.requestsPerSecond() == null) {
+        return;
+      }
+      long now = System.nanoTime();
+      tokens =
+        Math.min(
+          bucketSize(),
+          tokens + (now - lastRefillNanos) / 1e9 * limits.requestsPerSecond()
+        );
+      lastRefillNanos = now;
+    }
+
+    private double bucketSize() {
+      return limits.requestsPerSecond() == null
+        ? 0
+        : Math.max(1, limits.requestsPerSecond());
+    }
+  }
+}
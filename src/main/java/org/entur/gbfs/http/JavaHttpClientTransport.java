@@ -0,0 +1,236 @@
+package org.entur.gbfs.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Non-blocking transport based on {@link java.net.http.HttpClient}. No thread is held
+ * while waiting for a response, so a large number of requests can be in flight at
+ * the same time. The future completes when the headers have been received, and the
+ * body is received and decoded while it is read, so it must be closed after use.
+ * <p>
+ * The connect timeout is set for the transport, as the underlying http client doesn't
+ * support it per request. The read timeout limits the time until the response headers
+ * are received, and a request which exceeds its deadline is cancelled, also while its
+ * body is being read.
+ * </p>
+ */
+public class JavaHttpClientTransport implements GBFSHttpTransport {
+
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String CONTENT_ENCODING = "Content-Encoding";
+
+  private final HttpClient httpClient;
+
+  /**
+   * Create a transport which completes responses on the http client's default executor
+   */
+  public JavaHttpClientTransport() {
+    this(null);
+  }
+
+  /**
+   * @param executor Executor on which responses are completed, or null for the
+   *                 http client's default executor
+   */
+  public JavaHttpClientTransport(Executor executor) {
+    this(executor, null);
+  }
+
+  /**
+   * @param executor Executor on which responses are completed, or null for the
+   *                 http client's default executor
+   * @param connectTimeout Maximum time to establish a connection in milliseconds, or
+   *                       null for the default of 5 seconds
+   */
+  public JavaHttpClientTransport(Executor executor, Long connectTimeout) {
+    HttpClient.Builder builder = HttpClient
+      .newBuilder()
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .proxy(ProxySelector.getDefault())
+      .connectTimeout(
+        Duration.ofMillis(
+          new Timeouts(connectTimeout, null, null, null).connectTimeoutOrDefault()
+        )
+      );
+    if (executor != null) {
+      builder.executor(executor);
+    }
+    this.httpClient = builder.build();
+  }
+
+  @Override
+  public CompletableFuture<FetchResult> fetch(
+    URI uri,
+    long timeout,
+    Map<String, String> requestHeaderValues
+  ) {
+    return fetch(uri, Timeouts.ofReadTimeout(timeout), requestHeaderValues);
+  }
+
+  @Override
+  public CompletableFuture<FetchResult> fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues
+  ) {
+    return fetch(uri, timeouts, requestHeaderValues, null);
+  }
+
+  @Override
+  public CompletableFuture<FetchResult> fetch(
+    URI uri,
+    Timeouts timeouts,
+    Map<String, String> requestHeaderValues,
+    CompletableFuture<?> abortSignal
+  ) {
+    HttpRequest request;
+    try {
+      request = buildRequest(uri, timeouts.readTimeoutOrDefault(), requestHeaderValues);
+    } catch (IllegalArgumentException e) {
+      return CompletableFuture.failedFuture(new IOException(e));
+    }
+
+    CompletableFuture<HttpResponse<InputStream>> response = httpClient.sendAsync(
+      request,
+      HttpResponse.BodyHandlers.ofInputStream()
+    );
+    ScheduledFuture<?> abortAtDeadline = DeadlineScheduler.schedule(
+      () -> abort(response),
+      timeouts.deadline()
+    );
+    if (abortSignal != null) {
+      abortSignal.thenRun(() -> abort(response));
+    }
+    return response.handle((result, e) -> {
+      if (e != null) {
+        DeadlineScheduler.cancel(abortAtDeadline);
+      }
+      Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+      if (
+        cause instanceof CancellationException &&
+        abortSignal != null &&
+        abortSignal.isDone()
+      ) {
+        throw new CompletionException(new IOException("Aborted request to " + uri));
+      }
+      if (cause instanceof CancellationException) {
+        throw new CompletionException(
+          new HttpTimeoutException(
+            "Deadline of " + timeouts.deadline() + " ms exceeded for " + uri
+          )
+        );
+      }
+      if (e != null) {
+        throw e instanceof CompletionException completionException
+          ? completionException
+          : new CompletionException(e);
+      }
+      return toFetchResult(result, abortAtDeadline);
+    });
+  }
+
+  /**
+   * Cancelling the future cancels the exchange until the headers have been received.
+   * After that, closing the body stops receiving it, and fails reading it.
+   */
+  private static void abort(CompletableFuture<HttpResponse<InputStream>> response) {
+    if (!response.cancel(true)) {
+      response.thenAccept(result -> closeQuietly(result.body()));
+    }
+  }
+
+  private static void closeQuietly(InputStream body) {
+    try {
+      body.close();
+    } catch (IOException e) {
+      // the body is no longer needed
+    }
+  }
+
+  private HttpRequest buildRequest(
+    URI uri,
+    long timeout,
+    Map<String, String> requestHeaderValues
+  ) {
+    HttpRequest.Builder builder = HttpRequest
+      .newBuilder(uri)
+      .GET()
+      .timeout(Duration.ofMillis(timeout));
+    boolean hasAcceptEncoding = false;
+    if (requestHeaderValues != null) {
+      for (Map.Entry<String, String> entry : requestHeaderValues.entrySet()) {
+        builder.header(entry.getKey(), entry.getValue());
+        hasAcceptEncoding |= ACCEPT_ENCODING.equalsIgnoreCase(entry.getKey());
+      }
+    }
+    if (!hasAcceptEncoding) {
+      builder.header(ACCEPT_ENCODING, ContentDecoder.ACCEPT_ENCODING);
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param abortAtDeadline The abort of the request at its deadline, which is cancelled
+   *                        when the body is closed
+   */
+  private FetchResult toFetchResult(
+    HttpResponse<InputStream> response,
+    ScheduledFuture<?> abortAtDeadline
+  ) {
+    Map<String, String> headers = new HashMap<>();
+    for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        headers.put(entry.getKey(), entry.getValue().get(0));
+      }
+    }
+
+    if (response.statusCode() != FetchResult.HTTP_OK || response.body() == null) {
+      DeadlineScheduler.cancel(abortAtDeadline);
+      if (response.body() != null) {
+        closeQuietly(response.body());
+      }
+      return new FetchResult(response.statusCode(), headers, null);
+    }
+
+    // the body is received while it is read, on the thread reading it
+    CountingInputStream received = new CountingInputStream(
+      DeadlineScheduler.cancelOnClose(response.body(), abortAtDeadline)
+    );
+    try {
+      return new FetchResult(
+        response.statusCode(),
+        headers,
+        ContentDecoder.decodeOnRead(
+          received,
+          response.headers().firstValue(CONTENT_ENCODING).orElse(null)
+        ),
+        received::getCount
+      );
+    } catch (IOException e) {
+      closeQuietly(received);
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * The underlying http client releases its resources when it is no longer referenced
+   */
+  @Override
+  public void close() {}
+}
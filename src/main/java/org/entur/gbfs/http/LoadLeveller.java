@@ -0,0 +1,157 @@
+package org.entur.gbfs.http;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spreads the updates of many files over time. Files which share last_updated and ttl
+ * would otherwise all be due in the same second, and fetched in a burst. One leveller is
+ * shared by all files, e.g. of all subscriptions of a manager.
+ * <p>
+ * Each update is delayed by a random amount within the window, but never more than the
+ * staleness budget of the file, so files with a short ttl are delayed less. If the chosen
+ * second already has the maximum number of fetches, the next second with capacity within
+ * the allowed delay is used. If there is none, the update is delayed past the allowed
+ * delay to the first second with capacity, so that the maximum number of fetches per
+ * second is never exceeded.
+ * </p>
+ */
+public class LoadLeveller {
+
+  /**
+   * Time constant of the smoothed request rate
+   */
+  private static final double RATE_TIME_CONSTANT_SECONDS = 60;
+
+  private final int windowSeconds;
+  private final int maxFetchesPerSecond;
+  private final double stalenessBudget;
+
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * Number of scheduled fetches by second
+   */
+  private final NavigableMap<Long, Integer> scheduledFetches = new TreeMap<>();
+
+  private final UpdateClock clock;
+  private double requestRate = 0;
+  private long lastFetchNanos;
+
+  /**
+   * @param windowSeconds Maximum number of seconds to delay an update by
+   * @param maxFetchesPerSecond Maximum number of fetches to schedule in the same second
+   * @param stalenessBudget Maximum delay as a fraction of the ttl of each file, e.g. 0.5
+   *                        to delay a file with a ttl of 60 seconds by up to 30 seconds
+   */
+  public LoadLeveller(
+    int windowSeconds,
+    int maxFetchesPerSecond,
+    double stalenessBudget
+  ) {
+    this(windowSeconds, maxFetchesPerSecond, stalenessBudget, UpdateClock.SYSTEM);
+  }
+
+  /**
+   * @param clock The clock to measure the request rate with
+   */
+  public LoadLeveller(
+    int windowSeconds,
+    int maxFetchesPerSecond,
+    double stalenessBudget,
+    UpdateClock clock
+  ) {
+    if (windowSeconds < 0 || maxFetchesPerSecond < 1 || stalenessBudget < 0) {
+      throw new IllegalArgumentException("Invalid load levelling limits");
+    }
+    this.windowSeconds = windowSeconds;
+    this.maxFetchesPerSecond = maxFetchesPerSecond;
+    this.stalenessBudget = stalenessBudget;
+    this.clock = clock;
+    this.lastFetchNanos = clock.nanoTime();
+  }
+
+  /**
+   * Choose when to fetch a file which is due
+   *
+   * @param nextUpdate The time the file is due in milliseconds, on the monotonic clock
+   * @param now The current time in milliseconds, on the monotonic clock
+   * @param ttl The ttl of the file, or null to not delay the update unless the second
+   *            it is due in is full
+   * @return The time to fetch the file in milliseconds
+   */
+  long schedule(long nextUpdate, long now, Integer ttl) {
+    long start = Math.max(nextUpdate, now);
+    int maxDelay = Math.min(
+      windowSeconds,
+      (int) (stalenessBudget * (ttl == null ? 0 : ttl))
+    );
+    int preferredDelay = maxDelay == 0
+      ? 0
+      : ThreadLocalRandom.current().nextInt(maxDelay + 1);
+
+    lock.lock();
+    try {
+      scheduledFetches.headMap(Math.floorDiv(now, 1000L), false).clear();
+
+      Long chosen = null;
+      for (int i = 0; i <= maxDelay && chosen == null; i++) {
+        long time = start + ((preferredDelay + i) % (maxDelay + 1)) * 1000L;
+        if (hasCapacity(time)) {
+          chosen = time;
+        }
+      }
+      // every second within the allowed delay is full, so delay the update further
+      for (long time = start + (maxDelay + 1) * 1000L; chosen == null; time += 1000L) {
+        if (hasCapacity(time)) {
+          chosen = time;
+        }
+      }
+      scheduledFetches.merge(Math.floorDiv(chosen, 1000L), 1, Integer::sum);
+      return chosen;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean hasCapacity(long time) {
+    return (
+      scheduledFetches.getOrDefault(Math.floorDiv(time, 1000L), 0) < maxFetchesPerSecond
+    );
+  }
+
+  /**
+   * Record that a file is fetched, to measure the request rate
+   */
+  void recordFetch() {
+    lock.lock();
+    try {
+      long now = clock.nanoTime();
+      requestRate = decayedRate(now) + 1 / RATE_TIME_CONSTANT_SECONDS;
+      lastFetchNanos = now;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of fetches per second, as an exponentially weighted moving average
+   * over about a minute
+   */
+  public double getRequestRate() {
+    lock.lock();
+    try {
+      return decayedRate(clock.nanoTime());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private double decayedRate(long now) {
+    double elapsedSeconds = (now - lastFetchNanos) / 1e9;
+    return requestRate * Math.exp(-elapsedSeconds / RATE_TIME_CONSTANT_SECONDS);
+  }
+}
@@ -0,0 +1,166 @@
+package org.entur.gbfs.http;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cuts the tail latency of slow feeds by hedging their requests: if no response has
+ * been received after a percentile of the recent latencies of the file, a second
+ * identical request is sent, and whichever answers first is used. The other request
+ * is aborted.
+ * <p>
+ * Hedged requests are limited by a budget for each host, which is earned by the
+ * requests made to it, so that hedging can't double the load on a slow host. One
+ * instance should be shared by all subscriptions, so that the budget of a host covers
+ * all of its files.
+ * </p>
+ */
+public class RequestHedging {
+
+  /**
+   * Number of recent latencies of each file which the percentile is computed from
+   */
+  private static final int SAMPLE_WINDOW = 100;
+
+  /**
+   * Requests are not hedged until this many latencies of the file have been observed
+   */
+  private static final int MINIMUM_SAMPLES = 20;
+
+  /**
+   * Maximum number of hedged requests to a host in a burst
+   */
+  private static final double MAXIMUM_BUDGET = 10;
+
+  private final double latencyPercentile;
+  private final double budgetRatio;
+  private final Map<URI, LatencyWindow> latencies = new ConcurrentHashMap<>();
+  private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+  /**
+   * @param latencyPercentile The percentile of the recent latencies of a file after
+   *                          which its request is hedged, e.g. 0.95
+   * @param budgetRatio The maximum number of hedged requests to a host as a fraction of
+   *                    the requests made to it, e.g. 0.1 to add at most 10% to its load
+   */
+  public RequestHedging(double latencyPercentile, double budgetRatio) {
+    if (
+      latencyPercentile <= 0 ||
+      latencyPercentile > 1 ||
+      budgetRatio <= 0 ||
+      budgetRatio > 1
+    ) {
+      throw new IllegalArgumentException("Invalid request hedging limits");
+    }
+    this.latencyPercentile = latencyPercentile;
+    this.budgetRatio = budgetRatio;
+  }
+
+  /**
+   * Get the time after which a request for the file should be hedged, or empty if too
+   * few of its latencies have been observed
+   */
+  OptionalLong getHedgeAfterMillis(URI uri) {
+    LatencyWindow window = latencies.get(uri);
+    return window == null ? OptionalLong.empty() : window.percentile(latencyPercentile);
+  }
+
+  /**
+   * Record the time until the response of a request for the file was received, or the
+   * request failed. A request which lost to its hedged request took at least as long
+   * as the time until it was aborted.
+   */
+  void recordLatency(URI uri, long latencyMillis) {
+    latencies.computeIfAbsent(uri, key -> new LatencyWindow()).record(latencyMillis);
+  }
+
+  /**
+   * Record a request to the host of the URI, which adds to its budget
+   */
+  void recordRequest(URI uri) {
+    if (uri.getHost() != null) {
+      budget(uri).deposit(budgetRatio);
+    }
+  }
+
+  /**
+   * Take a hedged request to the host of the URI from its budget
+   *
+   * @return false if the budget of the host is spent
+   */
+  boolean tryAcquireHedge(URI uri) {
+    return uri.getHost() != null && budget(uri).tryWithdraw();
+  }
+
+  private Budget budget(URI uri) {
+    return budgets.computeIfAbsent(uri.getHost(), host -> new Budget());
+  }
+
+  private static final class LatencyWindow {
+
+    private final Lock lock = new ReentrantLock();
+    private final long[] samples = new long[SAMPLE_WINDOW];
+    private int count = 0;
+    private int next = 0;
+
+    void record(long latencyMillis) {
+      lock.lock();
+      try {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    OptionalLong percentile(double percentile) {
+      long[] sorted;
+      lock.lock();
+      try {
+        if (count < MINIMUM_SAMPLES) {
+          return OptionalLong.empty();
+        }
+        sorted = Arrays.copyOf(samples, count);
+      } finally {
+        lock.unlock();
+      }
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile * sorted.length) - 1;
+      return OptionalLong.of(sorted[Math.max(0, index)]);
+    }
+  }
+
+  private static final class Budget {
+
+    private final Lock lock = new ReentrantLock();
+    private double tokens = 0;
+
+    void deposit(double amount) {
+      lock.lock();
+      try {
+        tokens = Math.min(MAXIMUM_BUDGET, tokens + amount);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    boolean tryWithdraw() {
+      lock.lock();
+      try {
+        if (tokens < 1) {
+          return false;
+        }
+        tokens--;
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+}
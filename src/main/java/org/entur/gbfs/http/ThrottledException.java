@@ -0,0 +1,27 @@
+package org.entur.gbfs.http;
+
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+
+/**
+ * Thrown instead of making a request which exceeded its deadline while waiting for its
+ * turn at the {@link HostRateLimiter}. The request was not made, so it says nothing about
+ * the host.
+ */
+public class ThrottledException extends HttpTimeoutException {
+
+  private final long retryInMillis;
+
+  public ThrottledException(URI uri, long deadline) {
+    super("Deadline of " + deadline + " ms exceeded while waiting to fetch " + uri);
+    this.retryInMillis = deadline;
+  }
+
+  /**
+   * Get the time until the request should be made again. The host is assumed to stay
+   * as busy as it was, so this is as long as the request waited.
+   */
+  public long getRetryInMillis() {
+    return retryInMillis;
+  }
+}
@@ -0,0 +1,80 @@
+package org.entur.gbfs.http;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Timeouts of a request for a GBFS file. All values are in milliseconds, and timeouts
+ * which are not set use a default of 5 seconds, except the deadline.
+ *
+ * @param connectTimeout Maximum time to establish a connection
+ * @param connectionRequestTimeout Maximum time to wait for a connection from the pool
+ * @param readTimeout Maximum time to wait for data, between received packets
+ * @param deadline Maximum time for the whole request, from the time it is made until the
+ *                 body has been received, including the time waiting for its turn at a
+ *                 {@link HostRateLimiter}. The request is aborted when it is exceeded, so
+ *                 a server sending the body slowly can't hold a thread for longer. Not
+ *                 limited if not set
+ */
+public record Timeouts(
+  @Nullable Long connectTimeout,
+  @Nullable Long connectionRequestTimeout,
+  @Nullable Long readTimeout,
+  @Nullable Long deadline
+) {
+  public static final Timeouts DEFAULT = new Timeouts(null, null, null, null);
+
+  private static final long DEFAULT_TIMEOUT = 5000;
+
+  public Timeouts {
+    if (
+      isNegative(connectTimeout) ||
+      isNegative(connectionRequestTimeout) ||
+      isNegative(readTimeout) ||
+      isNegative(deadline)
+    ) {
+      throw new IllegalArgumentException("Timeouts must not be negative");
+    }
+  }
+
+  /**
+   * Get timeouts with only the read timeout set
+   */
+  public static Timeouts ofReadTimeout(@Nullable Long readTimeout) {
+    return readTimeout == null
+      ? DEFAULT
+      : new Timeouts(null, null, readTimeout, null);
+  }
+
+  /**
+   * Use the given read timeout, unless this has a read timeout of its own
+   */
+  public Timeouts withDefaultReadTimeout(@Nullable Long readTimeout) {
+    if (this.readTimeout != null || readTimeout == null) {
+      return this;
+    }
+    return new Timeouts(connectTimeout, connectionRequestTimeout, readTimeout, deadline);
+  }
+
+  /**
+   * Get these timeouts with another deadline
+   */
+  Timeouts withDeadline(long deadline) {
+    return new Timeouts(connectTimeout, connectionRequestTimeout, readTimeout, deadline);
+  }
+
+  long connectTimeoutOrDefault() {
+    return connectTimeout == null ? DEFAULT_TIMEOUT : connectTimeout;
+  }
+
+  long connectionRequestTimeoutOrDefault() {
+    return connectionRequestTimeout == null ? DEFAULT_TIMEOUT : connectionRequestTimeout;
+  }
+
+  long readTimeoutOrDefault() {
+    return readTimeout == null ? DEFAULT_TIMEOUT : readTimeout;
+  }
+
+  private static boolean isNegative(@Nullable Long timeout) {
+    return timeout != null && timeout < 0;
+  }
+}
@@ -0,0 +1,38 @@
+package org.entur.gbfs.http;
+
+/**
+ * Number of bytes transferred for a GBFS file. Received bytes are counted as sent
+ * over the wire, i.e. before decompression, while decoded bytes are the size of
+ * the uncompressed file.
+ *
+ * @param receivedBytes Bytes received for the last response
+ * @param decodedBytes Decoded size of the last response
+ * @param totalReceivedBytes Bytes received for all responses
+ * @param totalDecodedBytes Decoded size of all responses
+ */
+public record TransferStatistics(
+  long receivedBytes,
+  long decodedBytes,
+  long totalReceivedBytes,
+  long totalDecodedBytes
+) {
+  public static final TransferStatistics EMPTY = new TransferStatistics(0, 0, 0, 0);
+
+  TransferStatistics add(long received, long decoded) {
+    return new TransferStatistics(
+      received,
+      decoded,
+      totalReceivedBytes + received,
+      totalDecodedBytes + decoded
+    );
+  }
+
+  /**
+   * The ratio between decoded and received bytes of all responses
+   */
+  public double compressionRatio() {
+    return totalReceivedBytes == 0
+      ? 1.0
+      : (double) totalDecodedBytes / totalReceivedBytes;
+  }
+}
@@ -0,0 +1,140 @@
+package org.entur.gbfs.http;
+
+import java.util.Map;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits on how often GBFS files are fetched, regardless of the ttl the files advertise.
+ * All values are in seconds. The limits are applied from the time of the update, so a
+ * file with an old last_updated is not fetched more often than the minimum ttl allows.
+ * <p>
+ * Files served through a cache, e.g. a CDN, may not change until the cached copy
+ * expires, regardless of their ttl. If cache headers are respected, the next update is
+ * scheduled when the file is due by its ttl or when the cached copy expires, whichever
+ * is later.
+ * </p>
+ *
+ * @param minimumTtl Wait at least this long before fetching a file again
+ * @param maximumTtl Wait at most this long before fetching a file again
+ * @param minimumRetryInterval Wait at least this long before retrying a failed request
+ * @param feedPolicies Policies for individual files, by feed name (e.g.
+ *                     system_information). Limits which are not set for a file
+ *                     fall back to this policy
+ * @param respectCacheHeaders Wait until the response expires according to its
+ *                            Cache-Control max-age or Expires header. Defaults to false
+ */
+public record TtlPolicy(
+  @Nullable Integer minimumTtl,
+  @Nullable Integer maximumTtl,
+  @Nullable Integer minimumRetryInterval,
+  @Nullable Map<String, TtlPolicy> feedPolicies,
+  @Nullable Boolean respectCacheHeaders
+) {
+  public static final TtlPolicy DEFAULT = new TtlPolicy(null, null, null, null);
+
+  public TtlPolicy {
+    if (minimumTtl != null && maximumTtl != null && minimumTtl > maximumTtl) {
+      throw new IllegalArgumentException(
+        "minimumTtl " + minimumTtl + " is greater than maximumTtl " + maximumTtl
+      );
+    }
+  }
+
+  public TtlPolicy(
+    @Nullable Integer minimumTtl,
+    @Nullable Integer maximumTtl,
+    @Nullable Integer minimumRetryInterval,
+    @Nullable Map<String, TtlPolicy> feedPolicies
+  ) {
+    this(minimumTtl, maximumTtl, minimumRetryInterval, feedPolicies, null);
+  }
+
+  /**
+   * Get the policy for a single file. If a limit set for the file conflicts with a
+   * limit inherited from this policy, the limit set for the file wins.
+   */
+  public TtlPolicy forFeed(String feedName) {
+    TtlPolicy feedPolicy = feedPolicies == null ? null : feedPolicies.get(feedName);
+    if (feedPolicy == null) {
+      return this;
+    }
+    Integer min = feedPolicy.minimumTtl != null ? feedPolicy.minimumTtl : minimumTtl;
+    Integer max = feedPolicy.maximumTtl != null ? feedPolicy.maximumTtl : maximumTtl;
+    if (min != null && max != null && min > max) {
+      if (feedPolicy.minimumTtl != null) {
+        max = min;
+      } else {
+        min = max;
+      }
+    }
+    return new TtlPolicy(
+      min,
+      max,
+      feedPolicy.minimumRetryInterval != null
+        ? feedPolicy.minimumRetryInterval
+        : minimumRetryInterval,
+      null,
+      feedPolicy.respectCacheHeaders != null
+        ? feedPolicy.respectCacheHeaders
+        : respectCacheHeaders
+    );
+  }
+
+  /**
+   * Raise the minimum ttl of this policy to at least the given value
+   */
+  public TtlPolicy withMinimumTtl(@Nullable Integer ttl) {
+    if (ttl == null || (minimumTtl != null && minimumTtl >= ttl)) {
+      return this;
+    }
+    return new TtlPolicy(
+      ttl,
+      maximumTtl == null ? null : Math.max(ttl, maximumTtl),
+      minimumRetryInterval,
+      feedPolicies,
+      respectCacheHeaders
+    );
+  }
+
+  /**
+   * Limit the time of the next update to the bounds of this policy
+   *
+   * @param nextUpdate The time of the next update given by the file, in milliseconds
+   * @param now The current time in milliseconds
+   */
+  long limitNextUpdate(long nextUpdate, long now) {
+    long limited = nextUpdate;
+    if (maximumTtl != null) {
+      limited = Math.min(limited, now + maximumTtl * 1000L);
+    }
+    if (minimumTtl != null) {
+      limited = Math.max(limited, now + minimumTtl * 1000L);
+    }
+    return limited;
+  }
+
+  /**
+   * Delay the next update until the cached response expires, if cache headers are
+   * respected
+   *
+   * @param nextUpdate The time of the next update given by the file, in milliseconds
+   * @param now The current time in milliseconds
+   * @param cacheFreshness How long the response may still be cached, in milliseconds
+   */
+  long applyCacheFreshness(long nextUpdate, long now, long cacheFreshness) {
+    return Boolean.TRUE.equals(respectCacheHeaders)
+      ? Math.max(nextUpdate, now + cacheFreshness)
+      : nextUpdate;
+  }
+
+  /**
+   * Limit the time to wait before retrying a failed request
+   *
+   * @param retryInterval The time to wait in milliseconds
+   */
+  long limitRetryInterval(long retryInterval) {
+    return minimumRetryInterval == null
+      ? retryInterval
+      : Math.max(retryInterval, minimumRetryInterval * 1000L);
+  }
+}
@@ -0,0 +1,32 @@
+package org.entur.gbfs.http;
+
+/**
+ * The clocks used to schedule updates. Updates are scheduled on the monotonic clock, so
+ * that they are not stalled or bunched up when the wall clock is adjusted. The wall clock
+ * is only used to convert the last_updated of a file into a time on the monotonic clock.
+ *
+ * Can be replaced to test scheduling without waiting.
+ */
+public interface UpdateClock {
+  UpdateClock SYSTEM = new UpdateClock() {
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  /**
+   * Get the wall clock time in epoch milliseconds
+   */
+  long currentTimeMillis();
+
+  /**
+   * Get the monotonic time in nanoseconds, see {@link System#nanoTime()}
+   */
+  long nanoTime();
+}
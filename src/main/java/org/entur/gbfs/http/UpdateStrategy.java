@@ -1,56 +1,223 @@
 package org.entur.gbfs.http;
 
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Class to schedule nextUpdate, depending on lastUpdated, ttl and number of recently failed
  * request attempts. In case of a failing request, e.g. because the remote site is not available
- * or a quota is exceeded, this strategy backs off exponentially, up to a max backoff of 1 hour.
+ * or a quota is exceeded, this strategy backs off according to a {@link BackoffPolicy}.
  * To avoid that aa large number of requests is scheduled at exactly the same time, we subtract
- * a random amount up to 5% of the backoff time.
+ * a random amount up to 5% of the backoff time, or add it if the server said when to
+ * retry. The scheduled updates are limited by a {@link TtlPolicy}, and may be spread over
+ * time by a {@link LoadLeveller}.
+ * Updates are scheduled with millisecond precision on the monotonic clock of an
+ * {@link UpdateClock}, so adjustments of the wall clock don't delay or bunch them up.
  */
 public class UpdateStrategy {
 
   private static final Logger LOG = LoggerFactory.getLogger(UpdateStrategy.class);
-  private static int maxBackoffSeconds = 3600;
   private int failedAttemptsCount = 0;
-  private int nextUpdate;
+  private long nextUpdateNanos;
+  private long clockSkewMillis = 0;
+  private long cacheFreshnessMillis = 0;
+  private long lastBackoffMillis = 0;
+  private final TtlPolicy ttlPolicy;
+  private final BackoffPolicy backoffPolicy;
+  private final LoadLeveller loadLeveller;
+  private final UpdateClock clock;
+
+  public UpdateStrategy() {
+    this(TtlPolicy.DEFAULT);
+  }
+
+  public UpdateStrategy(TtlPolicy ttlPolicy) {
+    this(ttlPolicy, null);
+  }
+
+  /**
+   * @param loadLeveller Shared load leveller, or null to update files as soon as they
+   *                     are due
+   */
+  public UpdateStrategy(TtlPolicy ttlPolicy, LoadLeveller loadLeveller) {
+    this(ttlPolicy, loadLeveller, UpdateClock.SYSTEM);
+  }
+
+  /**
+   * @param clock The clock to schedule updates with
+   */
+  public UpdateStrategy(
+    TtlPolicy ttlPolicy,
+    LoadLeveller loadLeveller,
+    UpdateClock clock
+  ) {
+    this(ttlPolicy, BackoffPolicy.DEFAULT, loadLeveller, clock);
+  }
+
+  /**
+   * @param backoffPolicy How long to wait before retrying, depending on why the
+   *                      request failed
+   */
+  public UpdateStrategy(
+    TtlPolicy ttlPolicy,
+    BackoffPolicy backoffPolicy,
+    LoadLeveller loadLeveller,
+    UpdateClock clock
+  ) {
+    this.ttlPolicy = ttlPolicy;
+    this.backoffPolicy = backoffPolicy;
+    this.loadLeveller = loadLeveller;
+    this.clock = clock;
+    this.nextUpdateNanos = clock.nanoTime();
+  }
 
   public boolean shouldUpdate() {
-    return getCurrentTimeSeconds() >= nextUpdate;
+    // compare the difference, as nanoTime may overflow
+    return clock.nanoTime() - nextUpdateNanos >= 0;
   }
 
   public void rescheduleAfterFailure() {
+    rescheduleAfterFailure(null, null);
+  }
+
+  /**
+   * Reschedule after a failed request, with a backoff depending on why it failed, see
+   * {@link BackoffPolicy}
+   *
+   * @param statusCode The status code of the response, or null if there was none
+   * @param retryAfterMillis The time given by the Retry-After header of the response
+   *                         in milliseconds, or null
+   */
+  public void rescheduleAfterFailure(Integer statusCode, Long retryAfterMillis) {
     failedAttemptsCount++;
-    int backoffSeconds = Math.min(
-      maxBackoffSeconds,
-      (int) Math.pow(2, failedAttemptsCount - 1.0)
+    long backoffMillis = backoffPolicy.backoffMillis(
+      failedAttemptsCount,
+      statusCode,
+      retryAfterMillis
+    );
+    // spread requests by a random value up to 5%, but never retry before Retry-After
+    long randomOffset = (long) (Math.random() * 0.05 * backoffMillis);
+    long delayMillis = ttlPolicy.limitRetryInterval(
+      backoffPolicy.usesRetryAfter(retryAfterMillis)
+        ? backoffMillis + randomOffset
+        : backoffMillis - randomOffset
     );
-    // subtract a random value up to 5% to spread requests
-    int randomOffset = (int) (Math.random() * 0.05 * backoffSeconds);
-    nextUpdate = getCurrentTimeSeconds() + backoffSeconds - randomOffset;
+    scheduleIn(delayMillis);
+    lastBackoffMillis = delayMillis;
     LOG.info(
-      "Rescheduled nextUpdate after {} failure(s) to {}",
+      "Rescheduled nextUpdate after {} failure(s) with status code {} in {} ms",
       failedAttemptsCount,
-      nextUpdate
+      statusCode,
+      delayMillis
     );
   }
 
-  private int getCurrentTimeSeconds() {
-    return (int) (System.currentTimeMillis() / 1000);
+  /**
+   * Postpone the next update without counting a failed attempt, e.g. when no request
+   * could be made
+   */
+  public void postpone(long delayMillis) {
+    scheduleIn(delayMillis);
+  }
+
+  private void scheduleIn(long delayMillis) {
+    long nowNanos = clock.nanoTime();
+    long now = Math.floorDiv(nowNanos, 1000000L);
+    setNextUpdate(nowNanos, now, now + delayMillis, null);
   }
 
   public void scheduleNextUpdate(Integer lastUpdated, Integer ttl) {
     failedAttemptsCount = 0;
-    if (lastUpdated == null || ttl == null) {
-      nextUpdate = getCurrentTimeSeconds();
-    } else {
-      nextUpdate = lastUpdated + ttl;
+    long nowNanos = clock.nanoTime();
+    long now = Math.floorDiv(nowNanos, 1000000L);
+    long nextUpdate = now;
+    if (lastUpdated != null && ttl != null) {
+      // last_updated is wall clock time of the host, so convert it to our monotonic clock
+      nextUpdate +=
+        (lastUpdated + (long) ttl) * 1000 - clockSkewMillis - clock.currentTimeMillis();
+    }
+    nextUpdate = ttlPolicy.applyCacheFreshness(nextUpdate, now, cacheFreshnessMillis);
+    cacheFreshnessMillis = 0;
+    nextUpdate = ttlPolicy.limitNextUpdate(nextUpdate, now);
+    setNextUpdate(nowNanos, now, nextUpdate, ttl);
+  }
+
+  private void setNextUpdate(long nowNanos, long now, long nextUpdate, Integer ttl) {
+    if (loadLeveller != null) {
+      // retries and postponed updates are not spread, but still count against the cap
+      nextUpdate = loadLeveller.schedule(nextUpdate, now, ttl);
+    }
+    nextUpdateNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(nextUpdate - now);
+  }
+
+  /**
+   * Set how far the clock of the host is ahead of ours, to correct the last_updated of
+   * the next files scheduled
+   */
+  public void setClockSkewMillis(long clockSkewMillis) {
+    this.clockSkewMillis = clockSkewMillis;
+  }
+
+  public long getClockSkewMillis() {
+    return clockSkewMillis;
+  }
+
+  /**
+   * Get the current time by the clock of the host in epoch seconds, estimated from our
+   * wall clock and the clock skew
+   */
+  int getHostTimeSeconds() {
+    return (int) ((clock.currentTimeMillis() + clockSkewMillis) / 1000);
+  }
+
+  /**
+   * Set how long the latest response may still be cached, in milliseconds. The next
+   * update is not scheduled before then if the {@link TtlPolicy} respects cache headers.
+   */
+  public void setCacheFreshnessMillis(long cacheFreshnessMillis) {
+    this.cacheFreshnessMillis = cacheFreshnessMillis;
+  }
+
+  /**
+   * Called when the file is fetched
+   */
+  public void recordFetch() {
+    if (loadLeveller != null) {
+      loadLeveller.recordFetch();
     }
   }
 
+  /**
+   * Schedule the next update after a response with the same content as the previous
+   * one. The last_updated of the content is what made it due, so the next update is
+   * scheduled from the time of the response instead.
+   *
+   * @param responseTime The time of the response in epoch seconds, by the clock of the
+   *                     host
+   * @param ttl The ttl of the content
+   */
+  public void scheduleNextUpdateUnchanged(Integer responseTime, Integer ttl) {
+    scheduleNextUpdate(responseTime, ttl);
+  }
+
+  /**
+   * Get the time left until the next update is due, or 0 if it is already due
+   */
+  public long getMillisUntilNextUpdate() {
+    long remainingNanos = nextUpdateNanos - clock.nanoTime();
+    // round up, so that the update is due after waiting this long
+    return remainingNanos <= 0 ? 0 : (remainingNanos + 999999) / 1000000;
+  }
+
   public int getFailedAttemptsCount() {
     return failedAttemptsCount;
   }
+
+  /**
+   * Get the time waited before retrying after the last failure, in milliseconds
+   */
+  public long getLastBackoffMillis() {
+    return lastBackoffMillis;
+  }
 }
@@ -1,17 +1,37 @@
 package org.entur.gbfs.loader;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.net.URI;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.entur.gbfs.GbfsSubscriptionOptions;
 import org.entur.gbfs.authentication.DummyRequestAuthenticator;
 import org.entur.gbfs.authentication.RequestAuthenticator;
+import org.entur.gbfs.http.AdaptivePolling;
+import org.entur.gbfs.http.AdaptiveUpdateStrategy;
+import org.entur.gbfs.http.BackoffPolicy;
+import org.entur.gbfs.http.CircuitBreaker;
+import org.entur.gbfs.http.FeedUpdaterOptions;
 import org.entur.gbfs.http.GBFSFeedUpdater;
+import org.entur.gbfs.http.GBFSHttpClient;
+import org.entur.gbfs.http.LoadLeveller;
+import org.entur.gbfs.http.RequestHedging;
+import org.entur.gbfs.http.Timeouts;
+import org.entur.gbfs.http.TransferStatistics;
+import org.entur.gbfs.http.TtlPolicy;
+import org.entur.gbfs.http.UpdateClock;
+import org.entur.gbfs.http.UpdateStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +39,9 @@ public abstract class BaseGbfsLoader<S, T> {
 
   private static final Logger LOG = LoggerFactory.getLogger(BaseGbfsLoader.class);
   private final AtomicBoolean setupComplete = new AtomicBoolean(false);
-  private final Lock updateLock = new ReentrantLock();
+  private final AtomicBoolean updating = new AtomicBoolean(false);
+  // a lock rather than synchronized, which would pin virtual threads while fetching
+  private final Lock initLock = new ReentrantLock();
   private final Map<S, GBFSFeedUpdater<?>> feedUpdaters = new HashMap<>();
   private final Map<Class<?>, S> classMap = new HashMap<>();
   private T disoveryFileData;
@@ -27,6 +49,24 @@ public abstract class BaseGbfsLoader<S, T> {
   private final Map<String, String> httpHeaders;
   private final RequestAuthenticator requestAuthenticator;
   private final Long timeoutConnection;
+  private final GBFSHttpClient httpClient;
+  private final Executor feedFetchExecutor;
+  private final Long feedFetchDeadline;
+  private final boolean retainRawData;
+  private final ObjectMapper objectMapper;
+  private final TtlPolicy ttlPolicy;
+  private final Integer minimumTtl;
+  private final AdaptivePolling adaptivePolling;
+  private final LoadLeveller loadLeveller;
+  private final BackoffPolicy backoffPolicy;
+  private final Timeouts timeouts;
+  private final RequestHedging requestHedging;
+
+  /**
+   * Updates which did not complete before the deadline, by feed name
+   */
+  private final Map<S, CompletableFuture<UpdateOutcome>> pendingUpdates =
+    new HashMap<>();
 
   protected BaseGbfsLoader(
     String discoveryUrl,
@@ -34,26 +74,73 @@ public abstract class BaseGbfsLoader<S, T> {
     RequestAuthenticator requestAuthenticator,
     Long timeoutConnection,
     Class<T> discoveryFileClass
+  ) {
+    this(
+      new GbfsSubscriptionOptions(
+        URI.create(discoveryUrl),
+        null,
+        null,
+        httpHeaders,
+        requestAuthenticator,
+        timeoutConnection,
+        null
+      ),
+      null,
+      discoveryFileClass
+    );
+  }
+
+  protected BaseGbfsLoader(
+    GbfsSubscriptionOptions options,
+    GBFSHttpClient httpClient,
+    Class<T> discoveryFileClass
   ) {
     this.requestAuthenticator =
-      Objects.requireNonNullElseGet(requestAuthenticator, DummyRequestAuthenticator::new);
-    this.httpHeaders = httpHeaders;
-    this.timeoutConnection = timeoutConnection;
+      Objects.requireNonNullElseGet(
+        options.requestAuthenticator(),
+        DummyRequestAuthenticator::new
+      );
+    this.httpHeaders = options.headers();
+    this.timeoutConnection = options.timeout();
+    this.httpClient = Objects.requireNonNullElseGet(httpClient, GBFSHttpClient::getDefault);
+    this.feedFetchExecutor = options.feedFetchExecutor();
+    this.feedFetchDeadline = options.feedFetchDeadline();
+    // raw data is needed for validation
+    this.retainRawData =
+      !Boolean.FALSE.equals(options.retainRawData()) ||
+      Boolean.TRUE.equals(options.enableValidation());
+    this.objectMapper = options.objectMapper();
+    this.ttlPolicy = Objects.requireNonNullElse(options.ttlPolicy(), TtlPolicy.DEFAULT);
+    this.minimumTtl =
+      options.minimumTtl() == null ? null : Math.toIntExact(options.minimumTtl());
+    this.adaptivePolling = options.adaptivePolling();
+    this.loadLeveller = options.loadLeveller();
+    this.backoffPolicy =
+      Objects.requireNonNullElse(options.backoffPolicy(), BackoffPolicy.DEFAULT);
+    this.timeouts = options.timeouts();
+    this.requestHedging = options.requestHedging();
+    // the discovery file is always buffered, as getRawFeed returns it
     this.discoveryFileUpdater =
-      new GBFSFeedUpdater<>(
-        URI.create(discoveryUrl),
-        this.requestAuthenticator,
+      createFeedUpdater(
+        options.discoveryURI(),
         discoveryFileClass,
-        httpHeaders,
-        timeoutConnection
+        getDiscoveryFeedName(),
+        true
       );
   }
 
-  public synchronized void init() {
-    if (setupComplete.get()) {
-      return;
+  public void init() {
+    initLock.lock();
+    try {
+      if (!setupComplete.get()) {
+        fetchDiscoveryFile();
+      }
+    } finally {
+      initLock.unlock();
     }
+  }
 
+  private void fetchDiscoveryFile() {
     try {
       if (discoveryFileUpdater.fetchOnce()) {
         disoveryFileData = discoveryFileUpdater.getData();
@@ -78,24 +165,202 @@ public abstract class BaseGbfsLoader<S, T> {
    * Checks if any of the feeds should be updated base on the TTL and fetches. Returns true, if any feeds were updated.
    */
   public boolean update() {
+    return updateWithOutcome() == UpdateOutcome.UPDATED;
+  }
+
+  /**
+   * Same as {@link #update()}, but tells if no feeds were updated because they had not
+   * changed, because they failed, or because the loader was already being updated.
+   */
+  public UpdateOutcome updateWithOutcome() {
+    return UpdateOutcome.await(updateWithOutcomeAsync());
+  }
+
+  /**
+   * Same as {@link #updateWithOutcome()}, but doesn't block while waiting for responses
+   * if the http client's transport is non-blocking. The loader is set up first if it
+   * isn't, which blocks while fetching the discovery file.
+   */
+  public CompletableFuture<UpdateOutcome> updateWithOutcomeAsync() {
     if (!setupComplete.get()) {
       init();
+      if (!setupComplete.get()) {
+        return CompletableFuture.completedFuture(UpdateOutcome.FAILED);
+      }
+    }
+
+    if (!updating.compareAndSet(false, true)) {
+      return CompletableFuture.completedFuture(UpdateOutcome.SKIPPED);
+    }
+    CompletableFuture<UpdateOutcome> update;
+    try {
+      update =
+        feedFetchExecutor != null ? updateConcurrently() : updateSequentially();
+    } catch (RuntimeException e) {
+      update = CompletableFuture.failedFuture(e);
+    }
+    // be sure to release the flag, even in case an exception is thrown
+    return update.whenComplete((outcome, e) -> updating.set(false));
+  }
+
+  /**
+   * Update the feeds one at a time, each one after the previous one has completed
+   */
+  private CompletableFuture<UpdateOutcome> updateSequentially() {
+    CompletableFuture<UpdateOutcome> outcome = CompletableFuture.completedFuture(
+      UpdateOutcome.UNCHANGED
+    );
+    for (GBFSFeedUpdater<?> updater : feedUpdaters.values()) {
+      outcome =
+        outcome.thenCompose(previous -> {
+          int failedAttempts = updater.getFailedAttemptsCount();
+          return updater
+            .updateAsync()
+            .thenApply(updated ->
+              combine(previous, outcome(updater, failedAttempts, updated))
+            );
+        });
+    }
+    return outcome;
+  }
+
+  /**
+   * The outcome of updating a single file. An update which was not attempted, e.g.
+   * because the file was not due, is unchanged.
+   *
+   * @param failedAttempts The number of failed attempts before the update
+   */
+  private static UpdateOutcome outcome(
+    GBFSFeedUpdater<?> updater,
+    int failedAttempts,
+    boolean updated
+  ) {
+    if (updated) {
+      return UpdateOutcome.UPDATED;
+    }
+    return updater.getFailedAttemptsCount() > failedAttempts
+      ? UpdateOutcome.FAILED
+      : UpdateOutcome.UNCHANGED;
+  }
+
+  /**
+   * A subscription is updated if any of its files is, and otherwise failed if any of
+   * them failed
+   */
+  private static UpdateOutcome combine(UpdateOutcome first, UpdateOutcome second) {
+    if (first == UpdateOutcome.UPDATED || second == UpdateOutcome.UPDATED) {
+      return UpdateOutcome.UPDATED;
+    }
+    if (first == UpdateOutcome.FAILED || second == UpdateOutcome.FAILED) {
+      return UpdateOutcome.FAILED;
     }
+    return UpdateOutcome.UNCHANGED;
+  }
 
-    boolean didUpdate = false;
-    if (updateLock.tryLock()) {
-      try {
-        for (GBFSFeedUpdater<?> updater : feedUpdaters.values()) {
-          if (updater.update()) {
-            didUpdate = true;
-          }
+  /**
+   * Fetch all feeds which are due concurrently. Completes when they have all been
+   * fetched, or at the deadline. Feeds which are still being fetched after the
+   * deadline are skipped until they complete, and are then published on the following
+   * update.
+   */
+  private CompletableFuture<UpdateOutcome> updateConcurrently() {
+    UpdateOutcome outcome = UpdateOutcome.UNCHANGED;
+    for (Map.Entry<S, GBFSFeedUpdater<?>> entry : feedUpdaters.entrySet()) {
+      CompletableFuture<UpdateOutcome> pending = pendingUpdates.get(entry.getKey());
+      if (pending != null) {
+        if (!pending.isDone()) {
+          continue;
         }
-      } finally {
-        // be sure to release lock, even in case an exception is thrown
-        updateLock.unlock();
+        outcome = combine(outcome, pending.getNow(UpdateOutcome.FAILED));
+      }
+      GBFSFeedUpdater<?> updater = entry.getValue();
+      int failedAttempts = updater.getFailedAttemptsCount();
+      pendingUpdates.put(
+        entry.getKey(),
+        CompletableFuture
+          .supplyAsync(updater::updateAsync, feedFetchExecutor)
+          .thenCompose(Function.identity())
+          .thenApply(updated -> outcome(updater, failedAttempts, updated))
+          .exceptionally(e -> {
+            LOG.warn("Exception while updating feed {}", updater.getUrl(), e);
+            return UpdateOutcome.FAILED;
+          })
+      );
+    }
+
+    CompletableFuture<Void> all = CompletableFuture.allOf(
+      pendingUpdates.values().toArray(new CompletableFuture<?>[0])
+    );
+    if (feedFetchDeadline != null) {
+      all.completeOnTimeout(null, feedFetchDeadline, TimeUnit.MILLISECONDS);
+    }
+    UpdateOutcome previousOutcome = outcome;
+    // failures are handled for each feed. The deadline is completed on a timer thread,
+    // so the outcome is collected, and the delivery made, on the executor
+    return all.handleAsync(
+      (ignored, e) -> collectCompletedUpdates(previousOutcome),
+      feedFetchExecutor
+    );
+  }
+
+  private UpdateOutcome collectCompletedUpdates(UpdateOutcome outcome) {
+    Iterator<CompletableFuture<UpdateOutcome>> it = pendingUpdates
+      .values()
+      .iterator();
+    boolean complete = true;
+    while (it.hasNext()) {
+      CompletableFuture<UpdateOutcome> update = it.next();
+      if (update.isDone()) {
+        outcome = combine(outcome, update.getNow(UpdateOutcome.FAILED));
+        it.remove();
+      } else {
+        complete = false;
+      }
+    }
+    if (!complete) {
+      LOG.warn(
+        "Not all feeds from {} were fetched within {} ms",
+        discoveryFileUpdater.getUrl(),
+        feedFetchDeadline
+      );
+    }
+    return outcome;
+  }
+
+  /**
+   * Get the time left until the first of the feeds is due for an update, or 0 if a feed
+   * is already due, or the setup is not complete.
+   */
+  public long getMillisUntilNextUpdate() {
+    if (!setupComplete.get()) {
+      return 0;
+    }
+
+    long millisUntilNextUpdate = Long.MAX_VALUE;
+    for (GBFSFeedUpdater<?> updater : feedUpdaters.values()) {
+      millisUntilNextUpdate =
+        Math.min(millisUntilNextUpdate, updater.getMillisUntilNextUpdate());
+    }
+    return millisUntilNextUpdate;
+  }
+
+  /**
+   * Get the state of the circuits of the hosts of the feeds. If the feeds are on several
+   * hosts, an open circuit is reported before a half open one.
+   */
+  public CircuitBreaker.State getCircuitState() {
+    CircuitBreaker.State state = discoveryFileUpdater.getCircuitState();
+    for (GBFSFeedUpdater<?> updater : feedUpdaters.values()) {
+      CircuitBreaker.State feedState = updater.getCircuitState();
+      if (
+        feedState == CircuitBreaker.State.OPEN ||
+        (feedState == CircuitBreaker.State.HALF_OPEN &&
+          state == CircuitBreaker.State.CLOSED)
+      ) {
+        state = feedState;
       }
     }
-    return didUpdate;
+    return state;
   }
 
   private void createUpdaters() {
@@ -118,12 +383,11 @@ public abstract class BaseGbfsLoader<S, T> {
       if (feedName != null) {
         feedUpdaters.put(
           feedName,
-          new GBFSFeedUpdater<>(
+          createFeedUpdater(
             feed.uri(),
-            requestAuthenticator,
             feed.implementingClass(),
-            httpHeaders,
-            timeoutConnection
+            feedName,
+            retainRawData
           )
         );
         classMap.put(feed.implementingClass(), feedName);
@@ -131,6 +395,48 @@ public abstract class BaseGbfsLoader<S, T> {
     }
   }
 
+  private <X> GBFSFeedUpdater<X> createFeedUpdater(
+    URI uri,
+    Class<X> implementingClass,
+    S feedName,
+    boolean retainRawData
+  ) {
+    // the feed name enums of all versions have the name used in gbfs.json as string value
+    TtlPolicy feedTtlPolicy = ttlPolicy
+      .forFeed(String.valueOf(feedName))
+      .withMinimumTtl(minimumTtl);
+    return new GBFSFeedUpdater<>(
+      uri,
+      requestAuthenticator,
+      implementingClass,
+      httpHeaders,
+      timeoutConnection,
+      httpClient,
+      adaptivePolling == null
+        ? new UpdateStrategy(
+          feedTtlPolicy,
+          backoffPolicy,
+          loadLeveller,
+          UpdateClock.SYSTEM
+        )
+        : new AdaptiveUpdateStrategy(
+          feedTtlPolicy,
+          backoffPolicy,
+          adaptivePolling,
+          loadLeveller,
+          UpdateClock.SYSTEM
+        ),
+      FeedUpdaterOptions
+        .builder()
+        .retainRawData(retainRawData)
+        .objectMapper(objectMapper)
+        .timeouts(timeouts)
+        .requestHedging(requestHedging)
+        .responseExecutor(feedFetchExecutor)
+        .build()
+    );
+  }
+
   protected abstract List<GbfsFeed<S, ?>> getFeeds();
 
   public T getDiscoveryFeed() {
@@ -160,5 +466,19 @@ public abstract class BaseGbfsLoader<S, T> {
     return updater.getRawData();
   }
 
+  /**
+   * Gets the number of bytes received and decoded for a file, to see the effect of
+   * compression.
+   */
+  public Optional<TransferStatistics> getTransferStatistics(S feedName) {
+    if (feedName == getDiscoveryFeedName()) {
+      return Optional.of(discoveryFileUpdater.getTransferStatistics());
+    }
+
+    return Optional
+      .ofNullable(feedUpdaters.get(feedName))
+      .map(GBFSFeedUpdater::getTransferStatistics);
+  }
+
   protected abstract S getDiscoveryFeedName();
 }
@@ -1,9 +1,46 @@
 package org.entur.gbfs.loader;
 
+import java.util.concurrent.CompletableFuture;
+import org.entur.gbfs.http.CircuitBreaker;
+
 public interface GbfsSubscription {
   void init();
 
   boolean getSetupComplete();
 
   void update();
+
+  /**
+   * Update the subscription, and tell what the outcome was. Subscriptions which can't
+   * tell are assumed to be updated.
+   */
+  default UpdateOutcome updateWithOutcome() {
+    update();
+    return UpdateOutcome.UPDATED;
+  }
+
+  /**
+   * Same as {@link #updateWithOutcome()}, but doesn't block while waiting for responses
+   * if the subscription can fetch its files without blocking. Subscriptions which can't
+   * are updated before the future is returned.
+   */
+  default CompletableFuture<UpdateOutcome> updateWithOutcomeAsync() {
+    return CompletableFuture.completedFuture(updateWithOutcome());
+  }
+
+  /**
+   * Get the time left until the subscription is due for an update. Subscriptions which
+   * can't tell are always due.
+   */
+  default long getMillisUntilNextUpdate() {
+    return 0;
+  }
+
+  /**
+   * Get the state of the circuits of the hosts of the subscription's feeds, see
+   * {@link CircuitBreaker}. Subscriptions which can't tell are always closed.
+   */
+  default CircuitBreaker.State getCircuitState() {
+    return CircuitBreaker.State.CLOSED;
+  }
 }
@@ -0,0 +1,42 @@
+package org.entur.gbfs.loader;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The outcome of updating a subscription
+ */
+public enum UpdateOutcome {
+  /**
+   * At least one file was updated, and a delivery was made
+   */
+  UPDATED,
+  /**
+   * No files were due, or the files which were fetched had not changed
+   */
+  UNCHANGED,
+  /**
+   * No files were updated, and at least one file could not be fetched, or the
+   * subscription could not be set up
+   */
+  FAILED,
+  /**
+   * The subscription was already being updated
+   */
+  SKIPPED;
+
+  /**
+   * Wait for the outcome of an asynchronous update. A runtime exception thrown by the
+   * update is rethrown as it is.
+   */
+  public static UpdateOutcome await(CompletableFuture<UpdateOutcome> update) {
+    try {
+      return update.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+}
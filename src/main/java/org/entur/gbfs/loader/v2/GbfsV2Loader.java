@@ -1,10 +1,13 @@
 package org.entur.gbfs.loader.v2;
 
+import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.entur.gbfs.GbfsSubscriptionOptions;
 import org.entur.gbfs.authentication.RequestAuthenticator;
+import org.entur.gbfs.http.GBFSHttpClient;
 import org.entur.gbfs.loader.BaseGbfsLoader;
 import org.entur.gbfs.loader.GbfsFeed;
 import org.entur.gbfs.loader.LanguageNotInFeedException;
@@ -100,8 +103,52 @@ public class GbfsV2Loader extends BaseGbfsLoader<GBFSFeedName, GBFS> {
     RequestAuthenticator requestAuthenticator,
     Long timeoutConnection
   ) {
-    super(url, httpHeaders, requestAuthenticator, timeoutConnection, GBFS.class);
-    this.languageCode = languageCode;
+    this(url, httpHeaders, languageCode, requestAuthenticator, timeoutConnection, null);
+  }
+
+  /**
+   * Create a new GbfsLoader
+   *
+   * @param url The URL to the GBFS discovery file
+   * @param httpHeaders Additional HTTP headers to be used in requests (e.g. auth headers)
+   * @param languageCode The language code to be used to look up feeds in the discovery file
+   * @param requestAuthenticator An instance of RequestAuthenticator to provide authentication strategy for
+   *            each request.
+   * @param timeoutConnection The timeout connection value.
+   * @param httpClient The http client used to fetch all files, typically shared between loaders
+   */
+  public GbfsV2Loader(
+    String url,
+    Map<String, String> httpHeaders,
+    String languageCode,
+    RequestAuthenticator requestAuthenticator,
+    Long timeoutConnection,
+    GBFSHttpClient httpClient
+  ) {
+    this(
+      new GbfsSubscriptionOptions(
+        URI.create(url),
+        languageCode,
+        null,
+        httpHeaders,
+        requestAuthenticator,
+        timeoutConnection,
+        null
+      ),
+      httpClient
+    );
+  }
+
+  /**
+   * Create a new GbfsLoader
+   *
+   * @param options Options for the loader. The discovery URI and language code are used
+   *                to look up the feeds
+   * @param httpClient The http client used to fetch all files, typically shared between loaders
+   */
+  public GbfsV2Loader(GbfsSubscriptionOptions options, GBFSHttpClient httpClient) {
+    super(options, httpClient, GBFS.class);
+    this.languageCode = options.languageCode();
     init();
   }
 
@@ -23,10 +23,14 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import org.entur.gbfs.GbfsSubscriptionOptions;
 import org.entur.gbfs.SubscriptionUpdateInterceptor;
+import org.entur.gbfs.http.CircuitBreaker;
+import org.entur.gbfs.http.GBFSHttpClient;
 import org.entur.gbfs.loader.GbfsSubscription;
+import org.entur.gbfs.loader.UpdateOutcome;
 import org.mobilitydata.gbfs.v2_3.free_bike_status.GBFSFreeBikeStatus;
 import org.mobilitydata.gbfs.v2_3.gbfs.GBFSFeedName;
 import org.mobilitydata.gbfs.v2_3.gbfs_versions.GBFSGbfsVersions;
@@ -56,39 +60,41 @@ public class GbfsV2Subscription implements GbfsSubscription {
   private final GbfsSubscriptionOptions subscriptionOptions;
   private final Consumer<GbfsV2Delivery> consumer;
   private final SubscriptionUpdateInterceptor updateInterceptor;
+  private final GBFSHttpClient httpClient;
   private GbfsV2Loader loader;
 
   public GbfsV2Subscription(
     GbfsSubscriptionOptions subscriptionOptions,
     Consumer<GbfsV2Delivery> consumer
   ) {
-    this.subscriptionOptions = subscriptionOptions;
-    this.consumer = consumer;
-    this.updateInterceptor = null;
+    this(subscriptionOptions, consumer, null, null);
   }
 
   public GbfsV2Subscription(
     GbfsSubscriptionOptions subscriptionOptions,
     Consumer<GbfsV2Delivery> consumer,
     SubscriptionUpdateInterceptor updateInterceptor
+  ) {
+    this(subscriptionOptions, consumer, updateInterceptor, null);
+  }
+
+  public GbfsV2Subscription(
+    GbfsSubscriptionOptions subscriptionOptions,
+    Consumer<GbfsV2Delivery> consumer,
+    SubscriptionUpdateInterceptor updateInterceptor,
+    GBFSHttpClient httpClient
   ) {
     this.subscriptionOptions = subscriptionOptions;
     this.consumer = consumer;
     this.updateInterceptor = updateInterceptor;
+    this.httpClient = httpClient;
   }
 
   /**
    * Initialize the subscription by creating a loader
    */
   public void init() {
-    loader =
-      new GbfsV2Loader(
-        subscriptionOptions.discoveryURI().toString(),
-        subscriptionOptions.headers(),
-        subscriptionOptions.languageCode(),
-        subscriptionOptions.requestAuthenticator(), //
-        subscriptionOptions.timeout()
-      );
+    loader = new GbfsV2Loader(subscriptionOptions, httpClient);
   }
 
   /**
@@ -99,45 +105,89 @@ public class GbfsV2Subscription implements GbfsSubscription {
     return loader.getSetupComplete();
   }
 
+  /**
+   * Get the time left until the first of the subscription's feeds is due for an update
+   */
+  @Override
+  public long getMillisUntilNextUpdate() {
+    return loader.getMillisUntilNextUpdate();
+  }
+
+  /**
+   * Get the state of the circuits of the hosts of the subscription's feeds
+   */
+  @Override
+  public CircuitBreaker.State getCircuitState() {
+    return loader.getCircuitState();
+  }
+
   /**
    * Update the subscription by updating the loader and push a new delivery
    * to the consumer if the update had changes
    */
   public void update() {
+    updateWithOutcome();
+  }
+
+  /**
+   * Same as {@link #update()}, but tells if a delivery was made, or why not
+   */
+  @Override
+  public UpdateOutcome updateWithOutcome() {
+    return UpdateOutcome.await(updateWithOutcomeAsync());
+  }
+
+  /**
+   * Same as {@link #updateWithOutcome()}, but doesn't block while waiting for responses
+   * if the http client's transport is non-blocking
+   */
+  @Override
+  public CompletableFuture<UpdateOutcome> updateWithOutcomeAsync() {
     if (updateInterceptor != null) {
       updateInterceptor.beforeUpdate();
     }
 
+    CompletableFuture<UpdateOutcome> update;
     try {
-      if (loader.update()) {
-        GbfsV2Delivery delivery = new GbfsV2Delivery(
-          loader.getDiscoveryFeed(),
-          loader.getFeed(GBFSGbfsVersions.class),
-          loader.getFeed(GBFSSystemInformation.class),
-          loader.getFeed(GBFSVehicleTypes.class),
-          loader.getFeed(GBFSStationInformation.class),
-          loader.getFeed(GBFSStationStatus.class),
-          loader.getFeed(GBFSFreeBikeStatus.class),
-          loader.getFeed(GBFSSystemHours.class),
-          loader.getFeed(GBFSSystemCalendar.class),
-          loader.getFeed(GBFSSystemRegions.class),
-          loader.getFeed(GBFSSystemPricingPlans.class),
-          loader.getFeed(GBFSSystemAlerts.class),
-          loader.getFeed(GBFSGeofencingZones.class),
-          Boolean.TRUE.equals(subscriptionOptions.enableValidation())
-            ? validateFeeds()
-            : null
-        );
-        consumer.accept(delivery);
-      }
+      update = loader.updateWithOutcomeAsync();
     } catch (RuntimeException e) {
-      LOG.error("Exception occurred during update", e);
-      throw e;
-    } finally {
-      if (updateInterceptor != null) {
-        updateInterceptor.afterUpdate();
-      }
+      update = CompletableFuture.failedFuture(e);
     }
+    return update
+      .thenApply(outcome -> {
+        if (outcome == UpdateOutcome.UPDATED) {
+          deliver();
+        }
+        return outcome;
+      })
+      .whenComplete((outcome, e) -> {
+        if (e != null) {
+          LOG.error("Exception occurred during update", e);
+        }
+        if (updateInterceptor != null) {
+          updateInterceptor.afterUpdate();
+        }
+      });
+  }
+
+  private void deliver() {
+    GbfsV2Delivery delivery = new GbfsV2Delivery(
+      loader.getDiscoveryFeed(),
+      loader.getFeed(GBFSGbfsVersions.class),
+      loader.getFeed(GBFSSystemInformation.class),
+      loader.getFeed(GBFSVehicleTypes.class),
+      loader.getFeed(GBFSStationInformation.class),
+      loader.getFeed(GBFSStationStatus.class),
+      loader.getFeed(GBFSFreeBikeStatus.class),
+      loader.getFeed(GBFSSystemHours.class),
+      loader.getFeed(GBFSSystemCalendar.class),
+      loader.getFeed(GBFSSystemRegions.class),
+      loader.getFeed(GBFSSystemPricingPlans.class),
+      loader.getFeed(GBFSSystemAlerts.class),
+      loader.getFeed(GBFSGeofencingZones.class),
+      Boolean.TRUE.equals(subscriptionOptions.enableValidation()) ? validateFeeds() : null
+    );
+    consumer.accept(delivery);
   }
 
   private ValidationResult validateFeeds() {
@@ -5,7 +5,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.entur.gbfs.GbfsSubscriptionOptions;
 import org.entur.gbfs.authentication.RequestAuthenticator;
+import org.entur.gbfs.http.GBFSHttpClient;
 import org.entur.gbfs.loader.BaseGbfsLoader;
 import org.entur.gbfs.loader.GbfsFeed;
 import org.mobilitydata.gbfs.v3_0.gbfs.GBFSFeed;
@@ -74,7 +76,48 @@ public class GbfsV3Loader extends BaseGbfsLoader<GBFSFeed.Name, GBFSGbfs> {
     RequestAuthenticator requestAuthenticator,
     Long timeoutConnection
   ) {
-    super(url, httpHeaders, requestAuthenticator, timeoutConnection, GBFSGbfs.class);
+    this(url, httpHeaders, requestAuthenticator, timeoutConnection, null);
+  }
+
+  /**
+   * Create a new GbfsLoader
+   *
+   * @param url The URL to the GBFS discovery file
+   * @param httpHeaders Additional HTTP headers to be used in requests (e.g. auth headers)
+   * @param requestAuthenticator An instance of RequestAuthenticator to provide authentication strategy for
+   *            each request.
+   * @param timeoutConnection The timeout connection value.
+   * @param httpClient The http client used to fetch all files, typically shared between loaders
+   */
+  public GbfsV3Loader(
+    String url,
+    Map<String, String> httpHeaders,
+    RequestAuthenticator requestAuthenticator,
+    Long timeoutConnection,
+    GBFSHttpClient httpClient
+  ) {
+    this(
+      new GbfsSubscriptionOptions(
+        URI.create(url),
+        null,
+        null,
+        httpHeaders,
+        requestAuthenticator,
+        timeoutConnection,
+        null
+      ),
+      httpClient
+    );
+  }
+
+  /**
+   * Create a new GbfsLoader
+   *
+   * @param options Options for the loader
+   * @param httpClient The http client used to fetch all files, typically shared between loaders
+   */
+  public GbfsV3Loader(GbfsSubscriptionOptions options, GBFSHttpClient httpClient) {
+    super(options, httpClient, GBFSGbfs.class);
     init();
   }
 
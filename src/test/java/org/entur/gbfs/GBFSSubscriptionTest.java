@@ -2,14 +2,22 @@ package org.entur.gbfs;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import org.entur.gbfs.loader.UpdateOutcome;
 import org.entur.gbfs.loader.v2.GbfsV2Delivery;
 import org.entur.gbfs.loader.v3.GbfsV3Delivery;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class GBFSSubscriptionTest {
 
@@ -75,6 +83,206 @@ class GBFSSubscriptionTest {
     customThreadPool.shutdown();
   }
 
+  @Test
+  void testScheduledSubscription() throws URISyntaxException, InterruptedException {
+    waiter = new CountDownLatch(1);
+    try (GbfsSubscriptionManager loader = new GbfsSubscriptionManager()) {
+      loader.start();
+      Assertions.assertTrue(loader.isStarted());
+      String subscriber = loader.subscribeV2(
+        getTestOptions("file:src/test/resources/gbfs/lillestrombysykkel/gbfs.json", "nb"),
+        getTestConsumer()
+      );
+      Assertions.assertTrue(waiter.await(5, TimeUnit.SECONDS));
+      loader.unsubscribe(subscriber);
+      loader.stop();
+      Assertions.assertFalse(loader.isStarted());
+    }
+  }
+
+  @Test
+  void testRestartDuringUpdateKeepsSingleSchedule() throws Exception {
+    waiter = new CountDownLatch(1);
+    CountDownLatch updateStarted = new CountDownLatch(1);
+    CountDownLatch restarted = new CountDownLatch(1);
+    CountDownLatch rescheduledUpdateStarted = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    AtomicInteger updates = new AtomicInteger();
+    try (GbfsSubscriptionManager loader = new GbfsSubscriptionManager()) {
+      // the files have a ttl of 0, so each update is rescheduled after the minimum delay
+      loader.subscribeV3(
+        getV3TestOptions("file:src/test/resources/gbfs/v3/getaroundstavanger/gbfs.json"),
+        getV3TestConsumer(),
+        new SubscriptionUpdateInterceptor() {
+          @Override
+          public void beforeUpdate() {
+            // the first update is from the chain of the first start, the second from
+            // the chain of the restart, and the third is rescheduled by a chain
+            int update = updates.incrementAndGet();
+            if (update == 1) {
+              updateStarted.countDown();
+              await(restarted);
+            } else if (update == 3) {
+              rescheduledUpdateStarted.countDown();
+              await(done);
+            }
+          }
+
+          @Override
+          public void afterUpdate() {}
+        }
+      );
+      loader.start();
+      Assertions.assertTrue(updateStarted.await(5, TimeUnit.SECONDS));
+      loader.stop();
+      loader.start();
+      restarted.countDown();
+
+      // both updates have completed before the next one is due, so a second chain
+      // would have its update waiting on the scheduler while the third one runs
+      Assertions.assertTrue(rescheduledUpdateStarted.await(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(0, loader.getScheduledUpdateCount());
+      done.countDown();
+    } finally {
+      done.countDown();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void testSubscriptionWithVirtualThreads()
+    throws URISyntaxException, InterruptedException {
+    waiter = new CountDownLatch(1);
+    // falls back to the common pool before Java 21
+    try (
+      GbfsSubscriptionManager loader = GbfsSubscriptionManager.withVirtualThreads(null)
+    ) {
+      String subscriber = loader.subscribeV2(
+        getTestOptions("file:src/test/resources/gbfs/lillestrombysykkel/gbfs.json", "nb"),
+        getTestConsumer()
+      );
+      loader.update();
+      Assertions.assertTrue(waiter.await(5, TimeUnit.SECONDS));
+      loader.unsubscribe(subscriber);
+    }
+  }
+
+  @Test
+  void testUpdateOutcomes() throws Exception {
+    waiter = new CountDownLatch(1);
+    try (GbfsSubscriptionManager loader = new GbfsSubscriptionManager()) {
+      String subscriber = loader.subscribeV2(
+        getTestOptions("file:src/test/resources/gbfs/lillestrombysykkel/gbfs.json", "nb"),
+        getTestConsumer()
+      );
+
+      Assertions.assertEquals(
+        Map.of(subscriber, UpdateOutcome.UPDATED),
+        loader.update().get(5, TimeUnit.SECONDS)
+      );
+      // the files are fetched again, since they are outdated, but have not changed
+      Assertions.assertEquals(
+        UpdateOutcome.UNCHANGED,
+        loader.update(subscriber).get(5, TimeUnit.SECONDS)
+      );
+      loader.unsubscribe(subscriber);
+    }
+  }
+
+  @Test
+  void testEarlierFailureIsNotReportedAgain(@TempDir Path tempDir) throws Exception {
+    Path discoveryFile = tempDir.resolve("gbfs.json");
+    Files.writeString(
+      discoveryFile,
+      Files
+        .readString(Path.of("src/test/resources/gbfs/lillestrombysykkel/gbfs.json"))
+        .replace("system_pricing_plans.json", "missing.json")
+    );
+    try (GbfsSubscriptionManager loader = new GbfsSubscriptionManager()) {
+      String subscriber = loader.subscribeV2(
+        new GbfsSubscriptionOptions(
+          discoveryFile.toUri(),
+          "nb",
+          null,
+          null,
+          null,
+          null,
+          false
+        ),
+        delivery -> {}
+      );
+
+      Assertions.assertEquals(
+        UpdateOutcome.UPDATED,
+        loader.update(subscriber).get(5, TimeUnit.SECONDS)
+      );
+      // the missing file is not retried yet, and the others have not changed
+      Assertions.assertEquals(
+        UpdateOutcome.UNCHANGED,
+        loader.update(subscriber).get(5, TimeUnit.SECONDS)
+      );
+    }
+  }
+
+  @Test
+  void testSubscribeAll() throws Exception {
+    waiter = new CountDownLatch(2);
+    try (GbfsSubscriptionManager loader = new GbfsSubscriptionManager()) {
+      List<CompletableFuture<String>> subscribers = loader.subscribeAllV2(
+        List.of(
+          getTestOptions(
+            "file:src/test/resources/gbfs/lillestrombysykkel/gbfs.json",
+            "nb"
+          ),
+          getTestOptions("file:src/test/resources/gbfs/helsinki/gbfs.json", "en")
+        ),
+        options -> getTestConsumer()
+      );
+      for (CompletableFuture<String> subscriber : subscribers) {
+        Assertions.assertNotNull(subscriber.get(5, TimeUnit.SECONDS));
+      }
+      loader.update();
+      Assertions.assertTrue(waiter.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void testPendingSubscriptionIsActivated(@TempDir Path tempDir) throws Exception {
+    waiter = new CountDownLatch(1);
+    Path discoveryFile = tempDir.resolve("gbfs.json");
+    try (GbfsSubscriptionManager loader = new GbfsSubscriptionManager()) {
+      String subscriber = loader.subscribeV2(
+        getTestOptions(discoveryFile.toUri().toString(), "nb"),
+        getTestConsumer()
+      );
+      Assertions.assertNotNull(subscriber);
+      Assertions.assertTrue(loader.isPending(subscriber));
+
+      Files.copy(
+        Path.of("src/test/resources/gbfs/lillestrombysykkel/gbfs.json"),
+        discoveryFile
+      );
+      long deadline = System.currentTimeMillis() + 10000;
+      while (loader.isPending(subscriber) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      Assertions.assertFalse(loader.isPending(subscriber));
+
+      Assertions.assertEquals(
+        UpdateOutcome.UPDATED,
+        loader.update(subscriber).get(5, TimeUnit.SECONDS)
+      );
+      loader.unsubscribe(subscriber);
+    }
+  }
+
   Consumer<GbfsV2Delivery> getTestConsumer() {
     return delivery -> {
       Assertions.assertNotNull(delivery);
@@ -0,0 +1,45 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveUpdateStrategyTest {
+
+  @Test
+  void testIntervalGrowsWhileUnchanged() {
+    AdaptiveUpdateStrategy subject = new AdaptiveUpdateStrategy(
+      TtlPolicy.DEFAULT,
+      new AdaptivePolling(2, 60)
+    );
+    int now = (int) Instant.now().getEpochSecond();
+
+    subject.scheduleNextUpdateUnchanged(now, 10);
+    assertTrue(subject.getMillisUntilNextUpdate() > 15000);
+    subject.scheduleNextUpdateUnchanged(now, 10);
+    assertTrue(subject.getMillisUntilNextUpdate() > 35000);
+    // limited by the maximum interval
+    subject.scheduleNextUpdateUnchanged(now, 10);
+    assertTrue(subject.getMillisUntilNextUpdate() <= 60000);
+    assertEquals(3, subject.getUnchangedCount());
+  }
+
+  @Test
+  void testIntervalIsResetWhenChanged() {
+    AdaptiveUpdateStrategy subject = new AdaptiveUpdateStrategy(
+      TtlPolicy.DEFAULT,
+      new AdaptivePolling(2, 60)
+    );
+    int now = (int) Instant.now().getEpochSecond();
+
+    subject.scheduleNextUpdateUnchanged(now, 0);
+    assertFalse(subject.shouldUpdate());
+
+    subject.scheduleNextUpdate(now, 0);
+    assertTrue(subject.shouldUpdate());
+    assertEquals(0, subject.getUnchangedCount());
+  }
+}
@@ -0,0 +1,75 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private static final URI FEED = URI.create("https://example.com/gbfs.json");
+
+  @Test
+  void testCircuitOpensAfterConsecutiveFailures() {
+    CircuitBreaker subject = new CircuitBreaker(3, 10000, new TestClock());
+
+    for (int i = 0; i < 2; i++) {
+      assertTrue(subject.tryAcquire(FEED).isAllowed());
+      subject.record(FEED, false);
+    }
+    // a success resets the count
+    subject.record(FEED, true);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(subject.tryAcquire(FEED).isAllowed());
+      subject.record(FEED, false);
+    }
+
+    assertEquals(CircuitBreaker.State.OPEN, subject.getState("example.com"));
+    assertEquals(10000, subject.tryAcquire(FEED).getRetryInMillis());
+    assertEquals(10000, subject.getMillisUntilRetry(FEED));
+  }
+
+  @Test
+  void testSingleProbeWhileHalfOpen() {
+    TestClock clock = new TestClock();
+    CircuitBreaker subject = new CircuitBreaker(1, 10000, clock);
+    subject.tryAcquire(FEED);
+    subject.record(FEED, false);
+
+    clock.advance(10000);
+    assertTrue(subject.tryAcquire(FEED).isAllowed());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, subject.getState("example.com"));
+    assertFalse(subject.tryAcquire(FEED).isAllowed());
+
+    // the probe failed, so the circuit is opened again
+    subject.record(FEED, false);
+    assertEquals(CircuitBreaker.State.OPEN, subject.getState("example.com"));
+
+    clock.advance(10000);
+    assertTrue(subject.tryAcquire(FEED).isAllowed());
+    subject.record(FEED, true);
+    assertEquals(CircuitBreaker.State.CLOSED, subject.getState("example.com"));
+    assertTrue(subject.tryAcquire(FEED).isAllowed());
+  }
+
+  @Test
+  void testProbeIsOnlyCancelledByItsRequest() {
+    TestClock clock = new TestClock();
+    CircuitBreaker subject = new CircuitBreaker(1, 10000, clock);
+    CircuitBreaker.Attempt earlier = subject.tryAcquire(FEED);
+    subject.record(FEED, false);
+
+    clock.advance(10000);
+    CircuitBreaker.Attempt probe = subject.tryAcquire(FEED);
+    assertTrue(probe.isAllowed());
+
+    // a request allowed before the circuit opened doesn't give up the probe
+    subject.cancel(FEED, earlier);
+    assertFalse(subject.tryAcquire(FEED).isAllowed());
+
+    subject.cancel(FEED, probe);
+    assertTrue(subject.tryAcquire(FEED).isAllowed());
+  }
+}
@@ -0,0 +1,49 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+import org.mobilitydata.gbfs.v2_3.gbfs.GBFS;
+import org.mobilitydata.gbfs.v3_0.gbfs.GBFSGbfs;
+
+class FeedMetadataAccessorTest {
+
+  @Test
+  void testIntegerLastUpdated() {
+    GBFS data = new GBFS();
+    data.setLastUpdated(1711013153);
+    data.setTtl(60);
+
+    FeedMetadataAccessor subject = FeedMetadataAccessor.forClass(GBFS.class);
+    assertEquals(1711013153, subject.getLastUpdated(data));
+    assertEquals(60, subject.getTtl(data));
+  }
+
+  @Test
+  void testDateLastUpdated() {
+    GBFSGbfs data = new GBFSGbfs();
+    data.setLastUpdated(new Date(1711013153343L));
+    data.setTtl(0);
+
+    FeedMetadataAccessor subject = FeedMetadataAccessor.forClass(GBFSGbfs.class);
+    assertEquals(1711013153, subject.getLastUpdated(data));
+    assertEquals(0, subject.getTtl(data));
+  }
+
+  @Test
+  void testAccessorIsCached() {
+    assertSame(
+      FeedMetadataAccessor.forClass(GBFSGbfs.class),
+      FeedMetadataAccessor.forClass(GBFSGbfs.class)
+    );
+  }
+
+  @Test
+  void testMissingGetter() {
+    FeedMetadataAccessor subject = FeedMetadataAccessor.forClass(String.class);
+    assertThrows(IllegalStateException.class, () -> subject.getTtl("data"));
+  }
+}
@@ -1,13 +1,25 @@
 package org.entur.gbfs.http;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.entur.gbfs.authentication.BearerTokenRequestAuthenticator;
 import org.entur.gbfs.authentication.DummyRequestAuthenticator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,6 +29,9 @@ import org.mockito.Mockito;
 
 class GBFSFeedUpdaterTest {
 
+  private static final String DISCOVERY_FILE =
+    "{\"last_updated\":\"2024-03-21T09:25:53.343Z\",\"ttl\":0,\"version\":\"3.0-RC2\",\"data\":{\"feeds\":[]}}";
+
   @Mock
   GBFSHttpClient httpClientMock;
 
@@ -51,8 +66,101 @@ class GBFSFeedUpdaterTest {
   @Test
   void testUpdateReturnsFalseWhenHttpClientReturnsNoData() throws IOException {
     Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
-    Mockito.when(httpClientMock.getData(any(), any(), any())).thenReturn(null);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(null);
+    assertFalse(subject.update());
+  }
+
+  @Test
+  void testStatusCodeAndRetryAfterArePassedToUpdateStrategy() throws IOException {
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(new FetchResult(429, Map.of("Retry-After", "120"), null));
+
     assertFalse(subject.update());
+    assertEquals(429, subject.getLastStatusCode());
+    Mockito.verify(updateStrategyMock).rescheduleAfterFailure(429, 120000L);
+  }
+
+  @Test
+  void testEachRequestIsAuthenticatedOnItsOwnHeaders() throws IOException {
+    Map<String, String> headers = new HashMap<>(Map.of("Client", "test"));
+    GBFSFeedUpdater<GBFSGbfs> updater = new GBFSFeedUpdater<>(
+      URI.create("https://test.com/gbfs"),
+      new BearerTokenRequestAuthenticator("token"),
+      GBFSGbfs.class,
+      headers,
+      null,
+      httpClientMock,
+      updateStrategyMock
+    );
+    List<Map<String, String>> requestHeaders = new ArrayList<>();
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenAnswer(invocation -> {
+        requestHeaders.add(invocation.getArgument(2));
+        return null;
+      });
+
+    updater.update();
+    updater.update();
+
+    assertEquals(Map.of("Client", "test"), headers);
+    assertEquals(2, requestHeaders.size());
+    assertNotSame(requestHeaders.get(0), requestHeaders.get(1));
+    for (Map<String, String> request : requestHeaders) {
+      assertEquals(Map.of("Client", "test", "Authorization", "Bearer token"), request);
+    }
+  }
+
+  @Test
+  void testUpdateIsPostponedWhileCircuitIsOpen() throws IOException {
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito.when(httpClientMock.getMillisUntilRetry(any())).thenReturn(5000L);
+
+    assertFalse(subject.update());
+    Mockito.verify(updateStrategyMock).postpone(5000);
+    Mockito
+      .verify(httpClientMock, Mockito.never())
+      .fetch(any(), any(Timeouts.class), any());
+    Mockito
+      .verify(updateStrategyMock, Mockito.never())
+      .rescheduleAfterFailure(any(), any());
+  }
+
+  @Test
+  void testUpdateIsPostponedWhenRequestIsRejectedByCircuit() throws IOException {
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenThrow(new CircuitOpenException("test.com", 1000));
+
+    assertFalse(subject.update());
+    Mockito.verify(updateStrategyMock).postpone(1000);
+    Mockito
+      .verify(updateStrategyMock, Mockito.never())
+      .rescheduleAfterFailure(any(), any());
+  }
+
+  @Test
+  void testThrottledUpdateIsPostponed() {
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetchAsync(any(), any(Timeouts.class), any()))
+      .thenReturn(
+        CompletableFuture.failedFuture(
+          new ThrottledException(URI.create("https://test.com/gbfs"), 300)
+        )
+      );
+
+    assertFalse(subject.updateAsync().join());
+    Mockito.verify(updateStrategyMock).postpone(300);
+    Mockito
+      .verify(updateStrategyMock, Mockito.never())
+      .rescheduleAfterFailure(any(), any());
   }
 
   @Test
@@ -60,7 +168,9 @@ class GBFSFeedUpdaterTest {
     String initialString = "Not JSON";
     InputStream targetStream = new ByteArrayInputStream(initialString.getBytes());
     Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
-    Mockito.when(httpClientMock.getData(any(), any(), any())).thenReturn(targetStream);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(new FetchResult(200, null, targetStream));
     assertFalse(subject.update());
   }
 
@@ -69,7 +179,9 @@ class GBFSFeedUpdaterTest {
     String initialString = "{}";
     InputStream targetStream = new ByteArrayInputStream(initialString.getBytes());
     Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
-    Mockito.when(httpClientMock.getData(any(), any(), any())).thenReturn(targetStream);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(new FetchResult(200, null, targetStream));
     assertFalse(subject.update());
   }
 
@@ -77,18 +189,152 @@ class GBFSFeedUpdaterTest {
   void testUpdateReturnsFalseWhenClientThrows() throws IOException {
     Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
     Mockito
-      .when(httpClientMock.getData(any(), any(), any()))
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
       .thenThrow(IOException.class);
     assertFalse(subject.update());
   }
 
+  @Test
+  void testUpdateReturnsFalseWhenNotModified() throws IOException {
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(
+        new FetchResult(
+          200,
+          Map.of("ETag", "\"v1\""),
+          new ByteArrayInputStream(DISCOVERY_FILE.getBytes())
+        )
+      );
+    assertTrue(subject.update());
+    GBFSGbfs data = subject.getData();
+
+    Mockito
+      .when(
+        httpClientMock.fetch(
+          any(),
+          any(Timeouts.class),
+          argThat(headers -> headers.containsKey("If-None-Match"))
+        )
+      )
+      .thenReturn(new FetchResult(304, null, null));
+    assertFalse(subject.update());
+    assertSame(data, subject.getData());
+    Mockito
+      .verify(httpClientMock)
+      .fetch(
+        any(),
+        any(Timeouts.class),
+        eq(Map.of("If-None-Match", "\"v1\""))
+      );
+    Mockito
+      .verify(updateStrategyMock, Mockito.never())
+      .rescheduleAfterFailure(any(), any());
+  }
+
+  @Test
+  void testUpdateReturnsFalseWhenContentIsUnchanged() throws IOException {
+    assertUnchangedContentKeepsPreviousData(subject);
+  }
+
+  @Test
+  void testUpdateReturnsFalseWhenStreamedContentIsUnchanged() throws IOException {
+    assertUnchangedContentKeepsPreviousData(
+      new GBFSFeedUpdater<>(
+        URI.create("https://test.com/gbfs"),
+        new DummyRequestAuthenticator(),
+        GBFSGbfs.class,
+        null,
+        null,
+        httpClientMock,
+        updateStrategyMock,
+        FeedUpdaterOptions.builder().retainRawData(false).build()
+      )
+    );
+  }
+
+  private void assertUnchangedContentKeepsPreviousData(
+    GBFSFeedUpdater<GBFSGbfs> updater
+  ) throws IOException {
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(
+        new FetchResult(200, null, new ByteArrayInputStream(DISCOVERY_FILE.getBytes())),
+        new FetchResult(200, null, new ByteArrayInputStream(DISCOVERY_FILE.getBytes()))
+      );
+    assertTrue(updater.update());
+    GBFSGbfs data = updater.getData();
+
+    assertFalse(updater.update());
+    assertSame(data, updater.getData());
+    Mockito
+      .verify(updateStrategyMock, Mockito.never())
+      .rescheduleAfterFailure(any(), any());
+  }
+
+  @Test
+  void testCustomObjectMapper() throws IOException {
+    ObjectMapper objectMapper = Mockito.spy(new ObjectMapper());
+    GBFSFeedUpdater<GBFSGbfs> updater = new GBFSFeedUpdater<>(
+      URI.create("https://test.com/gbfs"),
+      new DummyRequestAuthenticator(),
+      GBFSGbfs.class,
+      null,
+      null,
+      httpClientMock,
+      updateStrategyMock,
+      FeedUpdaterOptions.builder().objectMapper(objectMapper).build()
+    );
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(
+        new FetchResult(200, null, new ByteArrayInputStream(DISCOVERY_FILE.getBytes()))
+      );
+    assertTrue(updater.update());
+    Mockito.verify(objectMapper).readerFor(GBFSGbfs.class);
+  }
+
+  @Test
+  void testPendingResponseIsHandledOnResponseExecutor() {
+    List<Runnable> tasks = new ArrayList<>();
+    GBFSFeedUpdater<GBFSGbfs> updater = new GBFSFeedUpdater<>(
+      URI.create("https://test.com/gbfs"),
+      new DummyRequestAuthenticator(),
+      GBFSGbfs.class,
+      null,
+      null,
+      httpClientMock,
+      updateStrategyMock,
+      FeedUpdaterOptions.builder().responseExecutor(tasks::add).build()
+    );
+    CompletableFuture<FetchResult> response = new CompletableFuture<>();
+    Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
+    Mockito
+      .when(httpClientMock.fetchAsync(any(), any(Timeouts.class), any()))
+      .thenReturn(response);
+
+    CompletableFuture<Boolean> update = updater.updateAsync();
+    response.complete(
+      new FetchResult(200, null, new ByteArrayInputStream(DISCOVERY_FILE.getBytes()))
+    );
+    assertFalse(update.isDone());
+    assertEquals(1, tasks.size());
+
+    tasks.get(0).run();
+    assertTrue(update.join());
+  }
+
   @Test
   void testHappyPath() throws IOException {
     String initialString =
       "{\"last_updated\":\"2024-03-21T09:25:53.343Z\",\"ttl\":0,\"version\":\"3.0-RC2\",\"data\":{\"feeds\":[{\"name\":\"system_information\",\"url\":\"file:src/test/resources/gbfs/v3/getaroundstavanger/system_information.json\"},{\"name\":\"vehicle_types\",\"url\":\"file:src/test/resources/gbfs/v3/getaroundstavanger/vehicle_types.json\"},{\"name\":\"vehicle_status\",\"url\":\"file:src/test/resources/gbfs/v3/getaroundstavanger/vehicle_status.json\"},{\"name\":\"system_pricing_plans\",\"url\":\"file:src/test/resources/gbfs/v3/getaroundstavanger/system_pricing_plans.json\"}]}}";
     InputStream targetStream = new ByteArrayInputStream(initialString.getBytes());
     Mockito.when(updateStrategyMock.shouldUpdate()).thenReturn(true);
-    Mockito.when(httpClientMock.getData(any(), any(), any())).thenReturn(targetStream);
+    Mockito
+      .when(httpClientMock.fetch(any(), any(Timeouts.class), any()))
+      .thenReturn(new FetchResult(200, null, targetStream));
     assertTrue(subject.update());
   }
 }
@@ -0,0 +1,501 @@
+package org.entur.gbfs.http;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+@WireMockTest
+class GBFSHttpClientTest {
+
+  @Test
+  void testPooledConnectionsAreReleased(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}")));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    // a pool with a single connection would block on the second request, if the
+    // first connection was not released
+    try (GBFSHttpClient subject = new GBFSHttpClient(1, 1, 1000, 1000)) {
+      for (int i = 0; i < 3; i++) {
+        try (InputStream is = subject.getData(uri, 1000L, null)) {
+          Assertions.assertEquals(
+            "{}",
+            new String(is.readAllBytes(), StandardCharsets.UTF_8)
+          );
+        }
+      }
+    }
+
+    verify(exactly(3), getRequestedFor(urlEqualTo("/gbfs.json")));
+  }
+
+  @Test
+  void testNon200StatusReturnsNull(WireMockRuntimeInfo runtimeInfo) throws IOException {
+    stubFor(get("/gbfs.json").willReturn(notFound()));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(1, 1, 1000, 1000)) {
+      Assertions.assertNull(subject.getData(uri, 1000L, null));
+      Assertions.assertNull(subject.getData(uri, 1000L, null));
+    }
+  }
+
+  @Test
+  void testClockSkewIsEstimatedFromDateHeader(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    String hostTime = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+      ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(1)
+    );
+    stubFor(get("/gbfs.json").willReturn(okJson("{}").withHeader("Date", hostTime)));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(1, 1, 1000, 1000)) {
+      Assertions.assertTrue(subject.getClockSkewMillis(uri).isEmpty());
+      subject.getData(uri, 1000L, null).close();
+      long skew = subject.getClockSkewMillis(uri).orElseThrow();
+      Assertions.assertTrue(skew > 58000 && skew < 62000, "skew was " + skew);
+    }
+  }
+
+  @Test
+  void testCacheFreshness(WireMockRuntimeInfo runtimeInfo) throws IOException {
+    stubFor(
+      get("/max-age.json")
+        .willReturn(
+          okJson("{}")
+            .withHeader("Cache-Control", "public, max-age=60")
+            .withHeader("Age", "20")
+        )
+    );
+    stubFor(
+      get("/expires.json")
+        .willReturn(
+          okJson("{}")
+            .withHeader("Date", "Wed, 21 Oct 2026 07:28:00 GMT")
+            .withHeader("Expires", "Wed, 21 Oct 2026 07:28:30 GMT")
+        )
+    );
+    stubFor(get("/no-cache.json").willReturn(okJson("{}")));
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(1, 1, 1000, 1000)) {
+      Assertions.assertEquals(40000, freshness(subject, runtimeInfo, "/max-age.json"));
+      Assertions.assertEquals(30000, freshness(subject, runtimeInfo, "/expires.json"));
+      Assertions.assertEquals(-1, freshness(subject, runtimeInfo, "/no-cache.json"));
+    }
+  }
+
+  private long freshness(
+    GBFSHttpClient client,
+    WireMockRuntimeInfo runtimeInfo,
+    String path
+  ) throws IOException {
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + path);
+    try (FetchResult result = client.fetch(uri, 1000L, Map.of())) {
+      return result.freshnessMillis().orElse(-1);
+    }
+  }
+
+  @Test
+  void testRequestWaitsUntilPreviousResponseIsClosed(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}")));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    HostRateLimiter rateLimiter = new HostRateLimiter(
+      new HostRateLimiter.Limits(1, null),
+      null
+    );
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new JavaHttpClientTransport(),
+        rateLimiter
+      )
+    ) {
+      FetchResult first = subject.fetchAsync(uri, 1000L, Map.of()).join();
+      CompletableFuture<FetchResult> second = subject.fetchAsync(uri, 1000L, Map.of());
+      Assertions.assertFalse(second.isDone());
+
+      first.close();
+      try (FetchResult result = second.join()) {
+        Assertions.assertTrue(result.isOk());
+      }
+    }
+    Assertions.assertEquals(0, rateLimiter.getActiveRequests("localhost"));
+  }
+
+  @Test
+  void testQueuedRequestsOfBlockingTransportAreNotMadeByClosingThread(
+    WireMockRuntimeInfo runtimeInfo
+  ) throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}")));
+    stubFor(get("/slow.json").willReturn(okJson("{}").withFixedDelay(1000)));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    URI slowUri = URI.create(runtimeInfo.getHttpBaseUrl() + "/slow.json");
+    HostRateLimiter rateLimiter = new HostRateLimiter(
+      new HostRateLimiter.Limits(2, null),
+      null
+    );
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new ApacheHttpTransport(4, 4, 1000, 1000),
+        rateLimiter
+      )
+    ) {
+      FetchResult first = subject.fetchAsync(uri, 5000L, Map.of()).join();
+      FetchResult second = subject.fetchAsync(uri, 5000L, Map.of()).join();
+      CompletableFuture<FetchResult> third = subject.fetchAsync(slowUri, 5000L, Map.of());
+      CompletableFuture<FetchResult> fourth = subject.fetchAsync(
+        slowUri,
+        5000L,
+        Map.of()
+      );
+      Assertions.assertEquals(2, rateLimiter.getWaitingRequests("localhost"));
+
+      // closing a response gives the next request its turn, without making it
+      long start = System.nanoTime();
+      first.close();
+      second.close();
+      Assertions.assertTrue(System.nanoTime() - start < 500_000_000L);
+
+      try (FetchResult result = third.join(); FetchResult other = fourth.join()) {
+        Assertions.assertTrue(result.isOk());
+        Assertions.assertTrue(other.isOk());
+      }
+    }
+    Assertions.assertEquals(0, rateLimiter.getActiveRequests("localhost"));
+  }
+
+  @Test
+  void testDeadlineIncludesWaitingForTurn(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}")));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    HostRateLimiter rateLimiter = new HostRateLimiter(
+      new HostRateLimiter.Limits(1, null),
+      null
+    );
+    Timeouts timeouts = new Timeouts(null, null, null, 300L);
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new JavaHttpClientTransport(),
+        rateLimiter
+      );
+      FetchResult first = subject.fetch(uri, timeouts, Map.of())
+    ) {
+      Assertions.assertThrows(
+        ThrottledException.class,
+        () -> subject.fetch(uri, timeouts, Map.of())
+      );
+      CompletableFuture<FetchResult> queued = subject.fetchAsync(uri, timeouts, Map.of());
+      CompletionException e = Assertions.assertThrows(
+        CompletionException.class,
+        queued::join
+      );
+      Assertions.assertInstanceOf(ThrottledException.class, e.getCause());
+      Assertions.assertEquals(1, rateLimiter.getActiveRequests("localhost"));
+    }
+
+    verify(exactly(1), getRequestedFor(urlEqualTo("/gbfs.json")));
+  }
+
+  @Test
+  void testCircuitOpensWhenHostFails(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(serviceUnavailable()));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new ApacheHttpTransport(1, 1, 1000, 1000),
+        null,
+        new CircuitBreaker(2, 60000)
+      )
+    ) {
+      Assertions.assertNull(subject.getData(uri, 1000L, null));
+      Assertions.assertNull(subject.getData(uri, 1000L, null));
+      Assertions.assertEquals(CircuitBreaker.State.OPEN, subject.getCircuitState(uri));
+      Assertions.assertThrows(
+        CircuitOpenException.class,
+        () -> subject.getData(uri, 1000L, null)
+      );
+      Assertions.assertTrue(subject.getMillisUntilRetry(uri) > 0);
+    }
+
+    verify(exactly(2), getRequestedFor(urlEqualTo("/gbfs.json")));
+  }
+
+  @Test
+  void testProbeWaitingForItsTurnIsCancelled(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(serviceUnavailable()));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new JavaHttpClientTransport(),
+        new HostRateLimiter(new HostRateLimiter.Limits(null, 0.1), null),
+        new CircuitBreaker(1, 0)
+      )
+    ) {
+      subject.fetch(uri, 1000L, Map.of()).close();
+      CompletableFuture<FetchResult> probe = subject.fetchAsync(uri, 1000L, Map.of());
+      Assertions.assertFalse(probe.isDone());
+      Assertions.assertEquals(
+        CircuitBreaker.State.HALF_OPEN,
+        subject.getCircuitState(uri)
+      );
+      Assertions.assertTrue(subject.getMillisUntilRetry(uri) > 0);
+
+      // the probe gives up its turn, so another request may be the probe
+      probe.cancel(false);
+      Assertions.assertEquals(0, subject.getMillisUntilRetry(uri));
+    }
+
+    verify(exactly(1), getRequestedFor(urlEqualTo("/gbfs.json")));
+  }
+
+  @Test
+  void testGzipResponseIsDecoded(WireMockRuntimeInfo runtimeInfo) throws IOException {
+    assertGzipResponseIsDecoded(
+      runtimeInfo,
+      new GBFSHttpClient(new ApacheHttpTransport(1, 1, 1000, 1000))
+    );
+  }
+
+  @Test
+  void testGzipResponseIsDecodedByNonBlockingTransport(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    assertGzipResponseIsDecoded(
+      runtimeInfo,
+      new GBFSHttpClient(new JavaHttpClientTransport())
+    );
+  }
+
+  @Test
+  void testNonBlockingTransportFetchAsync(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}").withHeader("X-Test", "v1")));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(new JavaHttpClientTransport())) {
+      CompletableFuture<FetchResult> future = subject.fetchAsync(uri, 1000L, Map.of());
+      try (FetchResult result = future.join()) {
+        Assertions.assertTrue(result.isOk());
+        Assertions.assertEquals("v1", result.header("x-test").orElseThrow());
+        Assertions.assertEquals(
+          "{}",
+          new String(result.body().readAllBytes(), StandardCharsets.UTF_8)
+        );
+      }
+    }
+  }
+
+  @Test
+  void testDeadlineAbortsSlowBody(WireMockRuntimeInfo runtimeInfo) throws IOException {
+    stubFor(
+      get("/gbfs.json")
+        .willReturn(okJson("{}".repeat(100)).withChunkedDribbleDelay(10, 5000))
+    );
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    Timeouts timeouts = new Timeouts(null, null, 10000L, 500L);
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new ApacheHttpTransport(1, 1, 1000, 1000)
+      )
+    ) {
+      long start = System.nanoTime();
+      Assertions.assertThrows(
+        IOException.class,
+        () -> {
+          try (FetchResult result = subject.fetch(uri, timeouts, null)) {
+            result.body().readAllBytes();
+          }
+        }
+      );
+      Assertions.assertTrue(System.nanoTime() - start < 4_000_000_000L);
+    }
+  }
+
+  @Test
+  void testDeadlineAbortsSlowBodyOfNonBlockingRequest(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(
+      get("/gbfs.json")
+        .willReturn(okJson("{}".repeat(100)).withChunkedDribbleDelay(10, 5000))
+    );
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    Timeouts timeouts = new Timeouts(null, null, 10000L, 500L);
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(new JavaHttpClientTransport())) {
+      long start = System.nanoTime();
+      Assertions.assertThrows(
+        IOException.class,
+        () -> {
+          try (FetchResult result = subject.fetch(uri, timeouts, null)) {
+            result.body().readAllBytes();
+          }
+        }
+      );
+      Assertions.assertTrue(System.nanoTime() - start < 4_000_000_000L);
+    }
+  }
+
+  @Test
+  void testDeadlineOfNonBlockingRequestIsCancelledWhenItCompletes(
+    WireMockRuntimeInfo runtimeInfo
+  ) throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}")));
+    stubFor(get("/missing.json").willReturn(notFound()));
+    Timeouts timeouts = new Timeouts(null, null, null, 60000L);
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(new JavaHttpClientTransport())) {
+      int scheduled = DeadlineScheduler.getScheduledCount();
+      try (
+        FetchResult result = subject.fetch(
+          URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json"),
+          timeouts,
+          null
+        )
+      ) {
+        result.body().readAllBytes();
+      }
+      subject
+        .fetch(URI.create(runtimeInfo.getHttpBaseUrl() + "/missing.json"), timeouts, null)
+        .close();
+      // the aborts don't hold on to the requests until their deadline
+      Assertions.assertTrue(DeadlineScheduler.getScheduledCount() <= scheduled);
+    }
+  }
+
+  @Test
+  void testDeadlineCancelsNonBlockingRequest(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}").withFixedDelay(5000)));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    Timeouts timeouts = new Timeouts(null, null, 10000L, 500L);
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(new JavaHttpClientTransport())) {
+      long start = System.nanoTime();
+      Assertions.assertThrows(
+        IOException.class,
+        () -> subject.fetch(uri, timeouts, null)
+      );
+      Assertions.assertTrue(System.nanoTime() - start < 4_000_000_000L);
+    }
+  }
+
+  @Test
+  void testSlowRequestIsHedged(WireMockRuntimeInfo runtimeInfo) throws IOException {
+    stubFor(
+      get("/gbfs.json")
+        .inScenario("hedging")
+        .whenScenarioStateIs(STARTED)
+        .willReturn(okJson("{\"request\":1}").withFixedDelay(5000))
+        .willSetStateTo("hedged")
+    );
+    stubFor(
+      get("/gbfs.json")
+        .inScenario("hedging")
+        .whenScenarioStateIs("hedged")
+        .willReturn(okJson("{\"request\":2}"))
+    );
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    RequestHedging hedging = new RequestHedging(0.9, 1);
+    for (int i = 0; i < 20; i++) {
+      hedging.recordLatency(uri, 100);
+    }
+
+    try (
+      GBFSHttpClient subject = new GBFSHttpClient(
+        new ApacheHttpTransport(2, 2, 1000, 1000)
+      )
+    ) {
+      long start = System.nanoTime();
+      try (
+        FetchResult result = subject.fetchHedged(uri, Timeouts.DEFAULT, null, hedging)
+      ) {
+        Assertions.assertEquals(
+          "{\"request\":2}",
+          new String(result.body().readAllBytes(), StandardCharsets.UTF_8)
+        );
+      }
+      Assertions.assertTrue(System.nanoTime() - start < 4_000_000_000L);
+    }
+
+    verify(exactly(2), getRequestedFor(urlEqualTo("/gbfs.json")));
+  }
+
+  @Test
+  void testLatencyOfFailedRequestsIsRecorded(WireMockRuntimeInfo runtimeInfo)
+    throws IOException {
+    stubFor(get("/gbfs.json").willReturn(okJson("{}").withFixedDelay(300)));
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+    RequestHedging hedging = new RequestHedging(0.9, 0.1);
+    Timeouts timeouts = new Timeouts(null, null, null, 100L);
+
+    try (GBFSHttpClient subject = new GBFSHttpClient(new JavaHttpClientTransport())) {
+      for (int i = 0; i < 20; i++) {
+        Assertions.assertThrows(
+          HttpTimeoutException.class,
+          () -> subject.fetchHedged(uri, timeouts, Map.of(), hedging)
+        );
+      }
+    }
+
+    // the requests which exceeded their deadline count as slow, rather than not at all
+    Assertions.assertTrue(hedging.getHedgeAfterMillis(uri).orElseThrow() >= 100);
+  }
+
+  private void assertGzipResponseIsDecoded(
+    WireMockRuntimeInfo runtimeInfo,
+    GBFSHttpClient subject
+  ) throws IOException {
+    String json = "{\"data\":\"" + "a".repeat(1000) + "\"}";
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(json.getBytes(StandardCharsets.UTF_8));
+    }
+    stubFor(
+      get("/gbfs.json")
+        .willReturn(
+          aResponse()
+            .withHeader("Content-Encoding", "gzip")
+            .withBody(compressed.toByteArray())
+        )
+    );
+    URI uri = URI.create(runtimeInfo.getHttpBaseUrl() + "/gbfs.json");
+
+    try (subject; FetchResult result = subject.fetch(uri, 1000L, null)) {
+      Assertions.assertEquals(
+        json,
+        new String(result.body().readAllBytes(), StandardCharsets.UTF_8)
+      );
+      Assertions.assertEquals(compressed.size(), result.receivedBytes());
+    }
+
+    verify(
+      getRequestedFor(urlEqualTo("/gbfs.json"))
+        .withHeader("Accept-Encoding", equalTo("gzip, deflate"))
+    );
+  }
+}
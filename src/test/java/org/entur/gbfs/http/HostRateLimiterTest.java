@@ -0,0 +1,71 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class HostRateLimiterTest {
+
+  private static final URI HOST_A = URI.create("https://a.example.com/gbfs.json");
+  private static final URI HOST_B = URI.create("https://b.example.com/gbfs.json");
+
+  @Test
+  void testConcurrentRequestsAreLimitedPerHost() {
+    HostRateLimiter subject = new HostRateLimiter(
+      HostRateLimiter.Limits.UNLIMITED,
+      Map.of("a.example.com", new HostRateLimiter.Limits(1, null))
+    );
+
+    CompletableFuture<HostRateLimiter.Permit> first = subject.acquire(HOST_A);
+    CompletableFuture<HostRateLimiter.Permit> second = subject.acquire(HOST_A);
+    assertTrue(first.isDone());
+    assertFalse(second.isDone());
+    assertEquals(1, subject.getWaitingRequests("a.example.com"));
+    // other hosts are not limited
+    assertTrue(subject.acquire(HOST_B).isDone());
+    assertTrue(subject.acquire(HOST_B).isDone());
+
+    first.join().release();
+    // releasing twice doesn't give the host another request
+    first.join().release();
+    assertTrue(second.isDone());
+    assertEquals(1, subject.getActiveRequests("a.example.com"));
+  }
+
+  @Test
+  void testRequestsPerSecondAreLimited() throws Exception {
+    HostRateLimiter subject = new HostRateLimiter(
+      new HostRateLimiter.Limits(null, 5.0),
+      null
+    );
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(subject.acquire(HOST_A).isDone());
+    }
+    CompletableFuture<HostRateLimiter.Permit> throttled = subject.acquire(HOST_A);
+    assertFalse(throttled.isDone());
+    throttled.get(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void testCancelledRequestGivesUpItsTurn() {
+    HostRateLimiter subject = new HostRateLimiter(
+      new HostRateLimiter.Limits(1, null),
+      null
+    );
+
+    CompletableFuture<HostRateLimiter.Permit> first = subject.acquire(HOST_A);
+    CompletableFuture<HostRateLimiter.Permit> cancelled = subject.acquire(HOST_A);
+    CompletableFuture<HostRateLimiter.Permit> third = subject.acquire(HOST_A);
+    cancelled.cancel(false);
+
+    first.join().release();
+    assertTrue(third.isDone() && !third.isCompletedExceptionally());
+  }
+}
@@ -0,0 +1,69 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class LoadLevellerTest {
+
+  @Test
+  void testFetchesAreSpreadWithinWindow() {
+    LoadLeveller subject = new LoadLeveller(30, 5, 0.5);
+    long now = 1000000;
+    Map<Long, Integer> fetchesBySecond = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      fetchesBySecond.merge(subject.schedule(now, now, 100) / 1000, 1, Integer::sum);
+    }
+
+    assertTrue(fetchesBySecond.size() >= 20);
+    fetchesBySecond.forEach((second, fetches) -> {
+      assertTrue(second >= 1000 && second <= 1030);
+      assertTrue(fetches <= 5);
+    });
+  }
+
+  @Test
+  void testStalenessBudget() {
+    LoadLeveller subject = new LoadLeveller(30, 2, 0.5);
+    for (int i = 0; i < 6; i++) {
+      assertTrue(subject.schedule(1000000, 1000000, 4) <= 1002000);
+    }
+    assertEquals(1003500, subject.schedule(1003500, 1000000, 0));
+  }
+
+  @Test
+  void testFetchesArePushedPastFullWindow() {
+    LoadLeveller subject = new LoadLeveller(2, 2, 1);
+    long now = 1000000;
+    Map<Long, Integer> fetchesBySecond = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      fetchesBySecond.merge(subject.schedule(now, now, 100) / 1000, 1, Integer::sum);
+    }
+    // files without a ttl are not spread, but neither exceed the cap
+    for (int i = 0; i < 4; i++) {
+      fetchesBySecond.merge(subject.schedule(now, now, null) / 1000, 1, Integer::sum);
+    }
+
+    assertEquals(7, fetchesBySecond.size());
+    fetchesBySecond.forEach((second, fetches) -> {
+      assertTrue(second >= 1000 && second <= 1006);
+      assertEquals(2, fetches);
+    });
+  }
+
+  @Test
+  void testRequestRate() {
+    TestClock clock = new TestClock();
+    LoadLeveller subject = new LoadLeveller(30, 5, 0.5, clock);
+    assertEquals(0, subject.getRequestRate());
+    for (int i = 0; i < 600; i++) {
+      subject.recordFetch();
+      clock.advance(500);
+    }
+    // two fetches per second for ten minutes
+    assertEquals(2, subject.getRequestRate(), 0.05);
+  }
+}
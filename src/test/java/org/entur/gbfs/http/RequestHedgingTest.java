@@ -0,0 +1,64 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.Test;
+
+class RequestHedgingTest {
+
+  private static final URI FEED = URI.create("https://example.com/gbfs.json");
+  private static final URI OTHER_FEED = URI.create("https://example.com/other.json");
+
+  @Test
+  void testHedgeAfterPercentileOfRecentLatencies() {
+    RequestHedging subject = new RequestHedging(0.9, 0.1);
+
+    for (int i = 1; i < 20; i++) {
+      subject.recordLatency(FEED, i * 10);
+    }
+    // too few samples
+    assertEquals(OptionalLong.empty(), subject.getHedgeAfterMillis(FEED));
+
+    subject.recordLatency(FEED, 200);
+    assertEquals(OptionalLong.of(180), subject.getHedgeAfterMillis(FEED));
+    assertEquals(OptionalLong.empty(), subject.getHedgeAfterMillis(OTHER_FEED));
+
+    // only the most recent latencies are used
+    for (int i = 0; i < 100; i++) {
+      subject.recordLatency(FEED, 50);
+    }
+    assertEquals(OptionalLong.of(50), subject.getHedgeAfterMillis(FEED));
+  }
+
+  @Test
+  void testHedgesAreLimitedByBudgetOfHost() {
+    RequestHedging subject = new RequestHedging(0.9, 0.25);
+
+    assertFalse(subject.tryAcquireHedge(FEED));
+    for (int i = 0; i < 4; i++) {
+      subject.recordRequest(i % 2 == 0 ? FEED : OTHER_FEED);
+    }
+    // the budget is shared by the files of the host
+    assertTrue(subject.tryAcquireHedge(OTHER_FEED));
+    assertFalse(subject.tryAcquireHedge(FEED));
+    assertFalse(subject.tryAcquireHedge(URI.create("https://example.org/gbfs.json")));
+  }
+
+  @Test
+  void testBudgetIsCapped() {
+    RequestHedging subject = new RequestHedging(0.9, 1);
+
+    for (int i = 0; i < 100; i++) {
+      subject.recordRequest(FEED);
+    }
+    int hedges = 0;
+    while (subject.tryAcquireHedge(FEED)) {
+      hedges++;
+    }
+    assertEquals(10, hedges);
+  }
+}
@@ -0,0 +1,34 @@
+package org.entur.gbfs.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock which only moves when told to
+ */
+class TestClock implements UpdateClock {
+
+  private long millis = 1700000000000L;
+  private long nanos = 0;
+
+  void advance(long millis) {
+    this.millis += millis;
+    this.nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+   * Adjust the wall clock only, like a step by NTP
+   */
+  void adjustWallClock(long millis) {
+    this.millis += millis;
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return millis;
+  }
+
+  @Override
+  public long nanoTime() {
+    return nanos;
+  }
+}
@@ -0,0 +1,73 @@
+package org.entur.gbfs.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TtlPolicyTest {
+
+  @Test
+  void testFeedPolicyFallsBackToDefaults() {
+    TtlPolicy subject = new TtlPolicy(
+      10,
+      300,
+      30,
+      Map.of("system_information", new TtlPolicy(3600, null, null, null))
+    );
+
+    assertEquals(
+      new TtlPolicy(3600, 3600, 30, null),
+      subject.forFeed("system_information")
+    );
+    assertSame(subject, subject.forFeed("vehicle_status"));
+  }
+
+  @Test
+  void testWithMinimumTtl() {
+    TtlPolicy subject = new TtlPolicy(null, 30, null, null).withMinimumTtl(60);
+
+    assertEquals(60, subject.minimumTtl());
+    assertEquals(60, subject.maximumTtl());
+    assertSame(subject, subject.withMinimumTtl(null));
+  }
+
+  @Test
+  void testLimits() {
+    TtlPolicy subject = new TtlPolicy(10, 300, 30, null);
+
+    assertEquals(1010000, subject.limitNextUpdate(0, 1000000));
+    assertEquals(1300000, subject.limitNextUpdate(5000000, 1000000));
+    assertEquals(1100500, subject.limitNextUpdate(1100500, 1000000));
+    assertEquals(30000, subject.limitRetryInterval(1000));
+    assertEquals(60500, subject.limitRetryInterval(60500));
+  }
+
+  @Test
+  void testFeedPolicyRespectsCacheHeaders() {
+    TtlPolicy subject = new TtlPolicy(
+      null,
+      null,
+      null,
+      Map.of("station_status", new TtlPolicy(null, null, null, null, false)),
+      true
+    );
+
+    assertEquals(1030000, subject.applyCacheFreshness(1010000, 1000000, 30000));
+    assertEquals(
+      1010000,
+      subject.forFeed("station_status").applyCacheFreshness(1010000, 1000000, 30000)
+    );
+    assertEquals(
+      1030000,
+      subject.forFeed("vehicle_status").applyCacheFreshness(1010000, 1000000, 30000)
+    );
+  }
+
+  @Test
+  void testMinimumGreaterThanMaximum() {
+    assertThrows(IllegalArgumentException.class, () -> new TtlPolicy(60, 30, null, null));
+  }
+}
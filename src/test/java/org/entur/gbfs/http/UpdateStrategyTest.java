@@ -1,5 +1,6 @@
 package org.entur.gbfs.http;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -37,4 +38,157 @@ class UpdateStrategyTest {
 
     assertFalse(subject.shouldUpdate());
   }
+
+  @Test
+  void testMinimumTtl() {
+    UpdateStrategy subject = new UpdateStrategy(new TtlPolicy(60, null, null, null));
+    // a file with an old last_updated is still not fetched again before the minimum ttl
+    subject.scheduleNextUpdate((int) Instant.now().getEpochSecond() - 3600, 0);
+    assertFalse(subject.shouldUpdate());
+  }
+
+  @Test
+  void testMaximumTtl() {
+    UpdateStrategy subject = new UpdateStrategy(new TtlPolicy(null, 0, null, null));
+    subject.scheduleNextUpdate((int) Instant.now().getEpochSecond(), 3600);
+    assertTrue(subject.shouldUpdate());
+  }
+
+  @Test
+  void testMillisecondPrecision() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(TtlPolicy.DEFAULT, null, clock);
+    clock.advance(400);
+    subject.scheduleNextUpdate((int) (clock.currentTimeMillis() / 1000), 2);
+
+    assertEquals(1600, subject.getMillisUntilNextUpdate());
+    clock.advance(1599);
+    assertFalse(subject.shouldUpdate());
+    clock.advance(1);
+    assertTrue(subject.shouldUpdate());
+  }
+
+  @Test
+  void testPostponedUpdatesRespectLoadLeveller() {
+    TestClock clock = new TestClock();
+    LoadLeveller loadLeveller = new LoadLeveller(30, 1, 0.5, clock);
+    UpdateStrategy first = new UpdateStrategy(TtlPolicy.DEFAULT, loadLeveller, clock);
+    UpdateStrategy second = new UpdateStrategy(TtlPolicy.DEFAULT, loadLeveller, clock);
+    first.postpone(5000);
+    second.postpone(5000);
+
+    assertEquals(5000, first.getMillisUntilNextUpdate());
+    assertEquals(6000, second.getMillisUntilNextUpdate());
+  }
+
+  @Test
+  void testWallClockAdjustment() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(TtlPolicy.DEFAULT, null, clock);
+    subject.scheduleNextUpdate((int) (clock.currentTimeMillis() / 1000), 10);
+
+    // a step of the wall clock doesn't make the update due early
+    clock.adjustWallClock(60000);
+    assertFalse(subject.shouldUpdate());
+    assertEquals(10000, subject.getMillisUntilNextUpdate());
+  }
+
+  @Test
+  void testClockSkew() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(TtlPolicy.DEFAULT, null, clock);
+    // the clock of the host is 30 seconds behind ours
+    int hostTime = (int) (clock.currentTimeMillis() / 1000) - 30;
+    subject.setClockSkewMillis(-30000);
+    subject.scheduleNextUpdate(hostTime, 10);
+
+    assertEquals(10000, subject.getMillisUntilNextUpdate());
+  }
+
+  @Test
+  void testHostTimeIsReadFromClock() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(TtlPolicy.DEFAULT, null, clock);
+    subject.setClockSkewMillis(-30000);
+    int hostTime = subject.getHostTimeSeconds();
+    assertEquals((clock.currentTimeMillis() - 30000) / 1000, hostTime);
+
+    clock.adjustWallClock(60000);
+    assertEquals(hostTime + 60, subject.getHostTimeSeconds());
+  }
+
+  @Test
+  void testCacheHeadersAreRespected() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(
+      new TtlPolicy(null, null, null, null, true),
+      null,
+      clock
+    );
+    int now = (int) (clock.currentTimeMillis() / 1000);
+
+    // the cached copy expires after the ttl
+    subject.setCacheFreshnessMillis(30000);
+    subject.scheduleNextUpdate(now, 10);
+    assertEquals(30000, subject.getMillisUntilNextUpdate());
+
+    // the freshness only applies to the response it was given for
+    subject.scheduleNextUpdate(now, 10);
+    assertEquals(10000, subject.getMillisUntilNextUpdate());
+  }
+
+  @Test
+  void testCacheHeadersAreIgnoredByDefault() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(TtlPolicy.DEFAULT, null, clock);
+    subject.setCacheFreshnessMillis(30000);
+    subject.scheduleNextUpdate((int) (clock.currentTimeMillis() / 1000), 10);
+    assertEquals(10000, subject.getMillisUntilNextUpdate());
+  }
+
+  @Test
+  void testBackoffDependsOnStatusCode() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(TtlPolicy.DEFAULT, null, clock);
+
+    // connection errors back off from 1 second
+    subject.rescheduleAfterFailure(null, null);
+    assertTrue(subject.getLastBackoffMillis() <= 1000);
+
+    // server errors back off from 5 seconds
+    subject.scheduleNextUpdate(null, null);
+    subject.rescheduleAfterFailure(503, null);
+    assertTrue(subject.getLastBackoffMillis() > 4750);
+    assertTrue(subject.getLastBackoffMillis() <= 5000);
+    subject.rescheduleAfterFailure(503, null);
+    assertTrue(subject.getLastBackoffMillis() > 9500);
+    assertTrue(subject.getLastBackoffMillis() <= 10000);
+
+    // Retry-After is respected, and never retried early
+    subject.rescheduleAfterFailure(429, 120000L);
+    assertTrue(subject.getLastBackoffMillis() >= 120000);
+    assertTrue(subject.getLastBackoffMillis() <= 126000);
+
+    // other client errors back off hard
+    subject.scheduleNextUpdate(null, null);
+    subject.rescheduleAfterFailure(404, null);
+    assertTrue(subject.getLastBackoffMillis() > 285000);
+    assertEquals(subject.getLastBackoffMillis(), subject.getMillisUntilNextUpdate());
+  }
+
+  @Test
+  void testBackoffIsLimited() {
+    TestClock clock = new TestClock();
+    UpdateStrategy subject = new UpdateStrategy(
+      TtlPolicy.DEFAULT,
+      new BackoffPolicy(null, null, 60, false),
+      null,
+      clock
+    );
+
+    subject.rescheduleAfterFailure(429, 3600000L);
+    assertTrue(subject.getLastBackoffMillis() <= 5000);
+    subject.rescheduleAfterFailure(403, null);
+    assertTrue(subject.getLastBackoffMillis() <= 60000);
+  }
 }
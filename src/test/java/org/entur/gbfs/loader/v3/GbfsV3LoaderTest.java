@@ -1,12 +1,27 @@
 package org.entur.gbfs.loader.v3;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.entur.gbfs.GbfsSubscriptionOptions;
+import org.entur.gbfs.http.GBFSHttpClient;
+import org.entur.gbfs.http.JavaHttpClientTransport;
+import org.entur.gbfs.loader.UpdateOutcome;
 import org.junit.jupiter.api.Test;
 import org.mobilitydata.gbfs.v3_0.gbfs.GBFSFeed;
 import org.mobilitydata.gbfs.v3_0.geofencing_zones.GBFSGeofencingZones;
@@ -39,6 +54,94 @@ class GbfsV3LoaderTest {
     validateV3Feed(loader);
   }
 
+  @Test
+  void getV3FeedWithConcurrentFetch() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      GbfsV3Loader loader = new GbfsV3Loader(
+        GbfsSubscriptionOptions
+          .builder(
+            URI.create("file:src/test/resources/gbfs/v3/getaroundstavanger/gbfs.json")
+          )
+          .feedFetchExecutor(executor)
+          .feedFetchDeadline(10000L)
+          .build(),
+        null
+      );
+
+      validateV3Feed(loader);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testAsyncUpdateDoesNotWaitForResponses() throws IOException {
+    WireMockServer server = new WireMockServer(options().dynamicPort());
+    server.start();
+    try (GBFSHttpClient httpClient = new GBFSHttpClient(new JavaHttpClientTransport())) {
+      server.stubFor(
+        get("/gbfs.json")
+          .willReturn(
+            okJson(
+              "{\"last_updated\":\"2024-03-21T09:25:53.343Z\",\"ttl\":0,\"version\":\"3.0\",\"data\":{\"feeds\":[{\"name\":\"system_information\",\"url\":\"" +
+              server.baseUrl() +
+              "/system_information.json\"}]}}"
+            )
+          )
+      );
+      server.stubFor(
+        get("/system_information.json")
+          .willReturn(
+            okJson(
+              Files.readString(
+                Path.of(
+                  "src/test/resources/gbfs/v3/getaroundstavanger/system_information.json"
+                )
+              )
+            )
+              .withFixedDelay(500)
+          )
+      );
+      GbfsV3Loader loader = new GbfsV3Loader(
+        GbfsSubscriptionOptions
+          .builder(URI.create(server.baseUrl() + "/gbfs.json"))
+          .build(),
+        httpClient
+      );
+      assertTrue(loader.getSetupComplete());
+
+      CompletableFuture<UpdateOutcome> update = loader.updateWithOutcomeAsync();
+      assertFalse(update.isDone());
+      assertEquals(UpdateOutcome.SKIPPED, loader.updateWithOutcome());
+
+      assertEquals(UpdateOutcome.UPDATED, update.join());
+      assertNotNull(loader.getFeed(GBFSSystemInformation.class));
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  void getV3FeedWithoutRetainingRawData() {
+    GbfsV3Loader loader = new GbfsV3Loader(
+      GbfsSubscriptionOptions
+        .builder(
+          URI.create("file:src/test/resources/gbfs/v3/getaroundstavanger/gbfs.json")
+        )
+        .retainRawData(false)
+        .build(),
+      null
+    );
+
+    assertTrue(loader.update());
+
+    GBFSSystemInformation systemInformation = loader.getFeed(GBFSSystemInformation.class);
+    assertNotNull(systemInformation);
+    assertEquals("getaround_stavanger", systemInformation.getData().getSystemId());
+    assertTrue(loader.getRawFeed(GBFSFeed.Name.SYSTEM_INFORMATION).isEmpty());
+  }
+
   private void validateV3Feed(GbfsV3Loader loader) {
     assertTrue(loader.update());
 